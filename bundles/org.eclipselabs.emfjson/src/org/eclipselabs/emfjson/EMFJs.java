@@ -23,5 +23,23 @@ public final class EMFJs {
 	public static final String OPTION_INDENT_OUTPUT = "OPTION_INDENT_OUTPUT";
 	public static final String OPTION_PROXY_ATTRIBUTES = "PROXY_ATTRIBUTES";
 	public static final String OPTION_SERIALIZE_NAMESPACES = "OPTION_SERIALIZE_NAMESPACES";
+	public static final String OPTION_VALUE_CODECS = "OPTION_VALUE_CODECS";
+	public static final String OPTION_SHARE_PROXIES = "OPTION_SHARE_PROXIES";
+	public static final String OPTION_BULK_LOAD = "OPTION_BULK_LOAD";
+	public static final String OPTION_DEFER_ADAPTERS = "OPTION_DEFER_ADAPTERS";
+	public static final String OPTION_COMPRESSION = "OPTION_COMPRESSION";
+	public static final String OPTION_LINE_DELIMITED = "OPTION_LINE_DELIMITED";
+	public static final String OPTION_FLUSH_THRESHOLD = "OPTION_FLUSH_THRESHOLD";
+	public static final String OPTION_PROJECTION = "OPTION_PROJECTION";
+	public static final String OPTION_LAZY_CONTAINMENT = "OPTION_LAZY_CONTAINMENT";
+	public static final String OPTION_SAVE_INDEX = "OPTION_SAVE_INDEX";
+
+	/**
+	 * Values of {@link #OPTION_DEFER_ADAPTERS}, content adapters of the resource are 
+	 * attached once the load is done, or when the contents of the resource are 
+	 * first accessed after the load.
+	 */
+	public static final String ATTACH_AFTER_LOAD = "ATTACH_AFTER_LOAD";
+	public static final String ATTACH_ON_ACCESS = "ATTACH_ON_ACCESS";
 
 }
@@ -148,12 +148,22 @@ public class ModelUtil {
         if (jsonNode == null)
             return null;
 
+        return getEObjectURI(jsonNode.asText(), resource, nsMap);
+    }
+
+    /**
+     * Returns resolvable EObject URI from the value of a JSON reference.
+     * 
+     * @see #getEObjectURI(JsonNode, Resource, Map)
+     */
+    public static URI getEObjectURI(String value, Resource resource, Map<String, String> nsMap) {
+        if (value == null)
+            return null;
+
         if (nsMap == null) {
             nsMap = Collections.emptyMap();
         }
 
-        final String value = jsonNode.asText();
-
         if (value.contains(":")) {
             String[] split = value.split(":");
             // is namespaced prefix:fragment
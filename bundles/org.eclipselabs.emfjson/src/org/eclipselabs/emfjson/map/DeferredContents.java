@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.URIConverter;
+
+/**
+ * Elements of containment lists that have not been read by the load of a resource.
+ *
+ * With the option {@link org.eclipselabs.emfjson.EMFJs#OPTION_LAZY_CONTAINMENT}, a containment
+ * list longer than the threshold of the option only gets its first elements, the other elements
+ * are skipped and the position of the list in the document is kept, so that they can be read
+ * later from the same document. Deferred elements are added at the end of their list when they
+ * are loaded, references to deferred objects are proxies until then.
+ *
+ * Deferred elements are loaded by {@link #load(EObject, EReference)} or {@link #loadAll()}, or when
+ * an object is looked up by its fragment in a resource that loads them, such as
+ * {@link org.eclipselabs.emfjson.resource.JsResourceImpl}. Only resources implementing
+ * {@link Host} can read their document again, loads of other resources read whole documents.
+ * The length and time stamp of the document are kept by the load, deferred elements are not
+ * read from a document that has changed since.
+ *
+ * @since 0.8.0
+ */
+public final class DeferredContents extends AdapterImpl {
+
+	/**
+	 * Implemented by resources that can read again the document they have been loaded from.
+	 * Such resources must find their objects the default way, once the deferred elements
+	 * needed by a lookup are loaded.
+	 */
+	public interface Host {
+
+		/**
+		 * Opens the document of the resource, the stream must give the bytes read
+		 * by the load, decompressed if the document is compressed.
+		 */
+		InputStream openDocument(Map<?, ?> options) throws IOException;
+
+	}
+
+	/**
+	 * Deferred elements of a containment list, read from the array starting at
+	 * the offset. The first elements of the array have already been read.
+	 */
+	static final class Entry {
+
+		final EObject owner;
+		final EReference reference;
+		final long offset;
+		final int skip;
+		final int position;
+
+		private Entry(EObject owner, EReference reference, long offset, int skip, int position) {
+			this.owner = owner;
+			this.reference = reference;
+			this.offset = offset;
+			this.skip = skip;
+			this.position = position;
+		}
+	}
+
+	private final Resource resource;
+	private final EObjectMapper mapper;
+	private final Map<?, ?> options;
+	private final Map<String, String> namespaces;
+	private final int threshold;
+	private final Object[] document;
+	private final Map<Object, Entry> entries = new LinkedHashMap<Object, Entry>();
+	private boolean loading;
+
+	private DeferredContents(Resource resource, EObjectMapper mapper, Map<?, ?> options, Map<String, String> namespaces, int threshold) {
+		this.resource = resource;
+		this.mapper = mapper;
+		this.options = options;
+		this.namespaces = namespaces;
+		this.threshold = threshold;
+		this.document = getDocumentAttributes();
+	}
+
+	/**
+	 * Returns the deferred contents of the resource, null if its load did not defer any element.
+	 */
+	public static DeferredContents get(Resource resource) {
+		for (Adapter adapter: resource.eAdapters()) {
+			if (adapter instanceof DeferredContents) {
+				return (DeferredContents) adapter;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Replaces the deferred contents of the resource by the ones of a new load.
+	 */
+	static DeferredContents attach(Resource resource, EObjectMapper mapper, Map<?, ?> options, Map<String, String> namespaces, int threshold) {
+		remove(resource);
+
+		final DeferredContents deferred = new DeferredContents(resource, mapper, options, namespaces, threshold);
+		resource.eAdapters().add(deferred);
+
+		return deferred;
+	}
+
+	/**
+	 * Discards the deferred contents of the resource, must be called when the resource is unloaded.
+	 */
+	public static void remove(Resource resource) {
+		final DeferredContents deferred = get(resource);
+		if (deferred != null) {
+			resource.eAdapters().remove(deferred);
+		}
+	}
+
+	@Override
+	public boolean isAdapterForType(Object type) {
+		return type == DeferredContents.class;
+	}
+
+	/**
+	 * Returns true if no element remains to be loaded.
+	 */
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/**
+	 * Returns true if elements of the containment list of the object remain to be loaded.
+	 */
+	public boolean isDeferred(EObject owner, EReference reference) {
+		return getEntry(owner, reference) != null;
+	}
+
+	/**
+	 * Loads the deferred elements of the containment list of the object.
+	 */
+	public void load(EObject owner, EReference reference) {
+		final Entry entry = loading ? null : getEntry(owner, reference);
+		if (entry != null) {
+			load(entry);
+		}
+	}
+
+	/**
+	 * Loads all deferred elements, including the ones deferred by the loads of other elements.
+	 */
+	public void loadAll() {
+		while (!loading && !entries.isEmpty()) {
+			load(entries.values().iterator().next());
+		}
+	}
+
+	/**
+	 * Loads the deferred elements on the path of a fragment, so that the resource finds the
+	 * object of the fragment. Fragments that are not paths, /0/@feature.index/@feature, are ignored.
+	 */
+	public void load(String fragment) {
+		if (loading || entries.isEmpty() || fragment.length() == 0 || fragment.charAt(0) != '/') {
+			return;
+		}
+
+		final String[] segments = fragment.substring(1).split("/", -1);
+		final EList<EObject> contents = resource.getContents();
+		final int root;
+		try {
+			root = segments[0].length() == 0 ? 0 : Integer.parseInt(segments[0]);
+		} catch (NumberFormatException e) {
+			return;
+		}
+
+		EObject current = root < contents.size() ? contents.get(root) : null;
+		for (int i = 1; i < segments.length && current != null; i++) {
+			loadSegment(current, segments[i]);
+			try {
+				current = ((InternalEObject) current).eObjectForURIFragmentSegment(segments[i]);
+			} catch (RuntimeException e) {
+				current = null;
+			}
+		}
+	}
+
+	/**
+	 * Loads the deferred elements of the list of a segment, @feature.index,
+	 * if the index is not in the loaded part of the list.
+	 */
+	private void loadSegment(EObject eObject, String segment) {
+		final int dot = segment.lastIndexOf('.');
+		if (segment.length() == 0 || segment.charAt(0) != '@' || dot == -1) {
+			return;
+		}
+
+		final EStructuralFeature feature = eObject.eClass().getEStructuralFeature(segment.substring(1, dot));
+		final Entry entry = feature instanceof EReference ? getEntry(eObject, (EReference) feature) : null;
+		if (entry == null) {
+			return;
+		}
+
+		try {
+			final int index = Integer.parseInt(segment.substring(dot + 1));
+			if (index >= ((EList<?>) eObject.eGet(feature)).size()) {
+				load(entry);
+			}
+		} catch (NumberFormatException e) {
+			return;
+		}
+	}
+
+	private Entry getEntry(EObject owner, EReference reference) {
+		return entries.get(key(owner, reference));
+	}
+
+	private static Object key(EObject owner, EReference reference) {
+		return Arrays.<Object> asList(owner, reference);
+	}
+
+	/**
+	 * Reads the deferred elements of the entry from the document. Loading elements
+	 * does not change the modified state of the resource, lookups made while elements
+	 * are read do not load other elements.
+	 *
+	 * @throws IllegalStateException if the document has changed since the resource was loaded
+	 */
+	private void load(Entry entry) {
+		if (!Arrays.equals(document, getDocumentAttributes())) {
+			throw new IllegalStateException("Document " + resource.getURI() + 
+					" has changed since it was loaded, its deferred contents cannot be read");
+		}
+
+		entries.remove(key(entry.owner, entry.reference));
+
+		final boolean modified = resource.isModified();
+		loading = true;
+
+		InputStream inputStream = null;
+		try {
+			inputStream = ((Host) resource).openDocument(options);
+			skip(inputStream, entry.offset);
+			mapper.readDeferred(inputStream, this, entry, resource);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			loading = false;
+			resource.setModified(modified);
+
+			if (inputStream != null) {
+				try {
+					inputStream.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the length and time stamp of the document of the resource, 
+	 * attributes that the URI converter does not give are null.
+	 */
+	private Object[] getDocumentAttributes() {
+		final URIConverter converter = resource.getResourceSet() == null ? 
+				URIConverter.INSTANCE : resource.getResourceSet().getURIConverter();
+		final Map<String, ?> attributes = converter.getAttributes(resource.getURI(), 
+				Collections.singletonMap(URIConverter.OPTION_REQUESTED_ATTRIBUTES, 
+						new HashSet<String>(Arrays.asList(URIConverter.ATTRIBUTE_LENGTH, URIConverter.ATTRIBUTE_TIME_STAMP))));
+
+		return new Object[] { attributes.get(URIConverter.ATTRIBUTE_LENGTH), attributes.get(URIConverter.ATTRIBUTE_TIME_STAMP) };
+	}
+
+	private static void skip(InputStream inputStream, long count) throws IOException {
+		while (count > 0) {
+			final long skipped = inputStream.skip(count);
+			if (skipped > 0) {
+				count -= skipped;
+			} else if (inputStream.read() != -1) {
+				count--;
+			} else {
+				throw new IOException("Document ends before deferred contents");
+			}
+		}
+	}
+
+	/**
+	 * Records the elements of a containment list that are not read, from the array
+	 * starting at the offset of the document, after the given number of elements.
+	 */
+	void add(EObject owner, EReference reference, long offset, int skip, int position) {
+		entries.put(key(owner, reference), new Entry(owner, reference, offset, skip, position));
+	}
+
+	/**
+	 * Returns the number of elements of a containment list read by a load.
+	 */
+	int getThreshold() {
+		return threshold;
+	}
+
+	Map<?, ?> getOptions() {
+		return options;
+	}
+
+	Map<String, String> getNamespaces() {
+		return namespaces;
+	}
+
+}
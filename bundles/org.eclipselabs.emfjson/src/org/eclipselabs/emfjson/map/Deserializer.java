@@ -12,39 +12,65 @@ package org.eclipselabs.emfjson.map;
 
 import static org.eclipselabs.emfjson.common.Constants.EJS_TYPE_KEYWORD;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import org.eclipse.emf.common.util.BasicEList;
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.util.InternalEList;
 import org.eclipselabs.emfjson.common.ModelUtil;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 class Deserializer {
 
-	private Map<EObject, JsonNode> processed;
+	private ReferenceTable references;
 	private EAtttributeDeserializer eAtttributeDeserializer;
 	private EReferenceDeserializer eReferenceDeserializer;
 	private EReferenceResolver resolver;
 	private NamespaceDeserializer namespaceDeserializer;
 	private Map<String, String> namespaces = new HashMap<String, String>();
+	private Map<EClass, FeatureIndex> indexes = new HashMap<EClass, FeatureIndex>();
+	private Map<String, EClass> types = new HashMap<String, EClass>();
+	private TypeTags typeTags;
+	private ValueCodecs valueCodecs = ValueCodecs.DEFAULT;
 	private boolean useProxyAttributes;
+	private boolean shareProxies;
+	private boolean bulkLoad;
+	private boolean deferDelivery;
+	private Projection projection;
+	private DeferredContents deferredContents;
+	/**
+	 * Containment level of the object being read, roots are at level 1.
+	 */
+	private int level;
+	private final List<EObject> silenced = new ArrayList<EObject>();
 	private ProxyFactory proxyFactory;
+	private ObjectMapper objectMapper;
+	private JsonNode document;
+	private NodeIndex nodeIndex;
 
 	Deserializer(boolean useProxyAttributes) {
-		this.processed = new HashMap<EObject, JsonNode>();
+		this.references = new ReferenceTable();
 		this.useProxyAttributes = useProxyAttributes;
-		this.eAtttributeDeserializer = new EAtttributeDeserializer();
+		this.eAtttributeDeserializer = new EAtttributeDeserializer(this);
 
 		this.proxyFactory = new ProxyFactory(this);
 		this.eReferenceDeserializer = new EReferenceDeserializer(this);
@@ -55,26 +81,66 @@ class Deserializer {
 	EObject from(ObjectNode node, EClass eClass, Resource resource) {
 		EObject eObject = null;
 
-		namespaces.putAll(namespaceDeserializer.deSerialize(node));
+		if (document == null) {
+			document = node;
+		}
+
+		putNamespaces(namespaceDeserializer.deSerialize(node));
 
 		if (eClass == null) {
 			if (node.has(EJS_TYPE_KEYWORD)) {
-				URI eClassURI = ModelUtil.getEObjectURI(node.get(EJS_TYPE_KEYWORD), resource, getNamespaces());
-				eClass = getEClass(eClassURI, resource.getResourceSet());
+				eClass = getEClass(node.get(EJS_TYPE_KEYWORD).asText(), resource, resource.getResourceSet());
 			}
 		}
 
-		if (eClass != null && eClass instanceof EClass) {
-			eObject = EcoreUtil.create(eClass);
-			getProcessed().put(eObject, node);
+		if (eClass != null && eClass instanceof EClass && (projection == null || projection.includes(eClass))) {
+			eObject = create(eClass);
 
-			eAtttributeDeserializer.deSerialize(eObject, node);
-			eReferenceDeserializer.deSerialize(eObject, node, resource);
+			level++;
+			try {
+				deSerialize(eObject, node, resource);
+			} finally {
+				level--;
+			}
 		}
 
 		return eObject;
 	}
 
+	/**
+	 * Reads the keys of the node in a single pass, the feature of each key is 
+	 * looked up once and the value given to the attribute, map or reference 
+	 * deserializer.
+	 */
+	private void deSerialize(EObject eObject, ObjectNode node, Resource resource) {
+		final FeatureIndex index = getIndex(eObject.eClass());
+		final EStructuralFeature dynamicMapEntry = index.dynamicMapEntry;
+
+		for (Iterator<Entry<String, JsonNode>> it = node.fields(); it.hasNext();) {
+			final Entry<String, JsonNode> field = it.next();
+			final String key = field.getKey();
+			final JsonNode value = field.getValue();
+
+			if (!value.isObject()) {
+				final EAttribute attribute = index.getEAttribute(key);
+
+				if (attribute != null) {
+					if (projection == null || projection.includes(eObject.eClass(), attribute)) {
+						eAtttributeDeserializer.deSerialize(eObject, attribute, value);
+					}
+					continue;
+				} else if (dynamicMapEntry != null) {
+					eAtttributeDeserializer.deSerializeEntry(eObject, dynamicMapEntry, key, value);
+				}
+			}
+
+			final EReference reference = index.getEReference(key);
+			if (reference != null && (projection == null || projection.includes(eObject.eClass(), reference))) {
+				eReferenceDeserializer.deSerialize(eObject, reference, node, value, resource);
+			}
+		}
+	}
+
 	EObject from(ObjectNode node, Resource resource) {
 		return from(node, null, resource);
 	}
@@ -87,6 +153,10 @@ class Deserializer {
 		final EList<EObject> returnList = new BasicEList<EObject>();
 		EObject eObject;
 
+		if (document == null) {
+			document = node;
+		}
+
 		for (Iterator<JsonNode> it = node.elements(); it.hasNext();) {
 			JsonNode element = it.next();
 			if (element.isObject()) {
@@ -101,12 +171,108 @@ class Deserializer {
 	}
 
 	void resolve(Resource resource) {
-		resolver.resolve(getProcessed(), resource);
-		processed.clear();
+		resolve(resource, new FragmentIndex(resource));
+	}
+
+	/**
+	 * Resolves the references read since the last call, objects of 
+	 * the resource are looked up in the given index.
+	 */
+	void resolve(Resource resource, FragmentIndex index) {
+		resolver.resolve(references, resource, index);
+		references.clear();
+
+		restoreDelivery();
+	}
+
+	/**
+	 * Enables the delivery of notifications of the objects created with deferred 
+	 * delivery, must also be called when a load fails before its references are resolved.
+	 */
+	void restoreDelivery() {
+		for (EObject eObject: silenced) {
+			eObject.eSetDeliver(true);
+		}
+		silenced.clear();
+	}
+
+	/**
+	 * Creates an object of the document. If delivery is deferred, the object does 
+	 * not deliver notifications until the references of the document are resolved.
+	 */
+	EObject create(EClass eClass) {
+		final EObject eObject = EcoreUtil.create(eClass);
+
+		if (deferDelivery) {
+			eObject.eSetDeliver(false);
+			silenced.add(eObject);
+		}
+
+		return eObject;
+	}
+
+	/**
+	 * Adds an object created by this load to a containment list. The object 
+	 * cannot already be in the list, the list is not searched for it.
+	 */
+	void addContained(EList<EObject> values, EObject contained) {
+		if (values instanceof InternalEList) {
+			((InternalEList<EObject>) values).addUnique(contained);
+		} else {
+			values.add(contained);
+		}
+	}
+
+	/**
+	 * Adds a value of the document to a many-valued feature. With bulk load,
+	 * the list is not searched for the value and may hold it twice if the 
+	 * document does.
+	 */
+	@SuppressWarnings("unchecked")
+	void addValue(Collection<?> values, Object value) {
+		if (bulkLoad && values instanceof InternalEList) {
+			((InternalEList<Object>) values).addUnique(value);
+		} else {
+			((Collection<Object>) values).add(value);
+		}
+	}
+
+	/**
+	 * Makes room for the given number of values in the list before they 
+	 * are added, only done with bulk load.
+	 */
+	void ensureCapacity(Collection<?> values, int additional) {
+		if (bulkLoad && values instanceof BasicEList) {
+			((BasicEList<?>) values).grow(values.size() + additional);
+		}
 	}
 
 	EClass getEClass(URI uri, ResourceSet resourceSet) {
-		return (EClass) resourceSet.getEObject(uri, true);
+		if (typeTags == null) {
+			typeTags = TypeTags.get(resourceSet);
+		}
+		return typeTags.getEClass(uri);
+	}
+
+	/**
+	 * Returns the EClass of a type tag, fragments are resolved against the resource.
+	 * 
+	 * EClasses of tags that do not depend on the resource are kept until the 
+	 * namespaces of the document change.
+	 */
+	EClass getEClass(String type, Resource resource, ResourceSet resourceSet) {
+		final boolean absolute = type.indexOf(':') >= 0;
+
+		EClass eClass = absolute ? types.get(type) : null;
+		if (eClass == null) {
+			URI eClassURI = ModelUtil.getEObjectURI(type, resource, getNamespaces());
+			eClass = getEClass(eClassURI, resourceSet);
+
+			if (absolute && eClass != null) {
+				types.put(type, eClass);
+			}
+		}
+		return eClass;
 	}
 
 	EAtttributeDeserializer getEAtttributeDeserializer() {
@@ -125,16 +291,119 @@ class Deserializer {
 		return proxyFactory;
 	}
 
+	/**
+	 * Returns the index of the nodes of the document being loaded, 
+	 * the document is the first node given to this deserializer.
+	 */
+	NodeIndex getNodeIndex() {
+		if (nodeIndex == null && document != null) {
+			nodeIndex = new NodeIndex(document);
+		}
+		return nodeIndex;
+	}
+
 	Map<String, String> getNamespaces() {
 		return namespaces;
 	}
 
-	Map<EObject, JsonNode> getProcessed() {
-		return processed;
+	void putNamespaces(Map<String, String> values) {
+		if (!values.isEmpty()) {
+			namespaces.putAll(values);
+			types.clear();
+		}
+	}
+
+	/**
+	 * Returns the index of the EClass, indexes are kept by the deserializer 
+	 * to avoid looking for them in the {@link MetamodelCache} for each object.
+	 */
+	FeatureIndex getIndex(EClass eClass) {
+		FeatureIndex index = indexes.get(eClass);
+		if (index == null) {
+			index = MetamodelCache.getIndex(eClass);
+			indexes.put(eClass, index);
+		}
+		return index;
+	}
+
+	void setValueCodecs(ValueCodecs valueCodecs) {
+		this.valueCodecs = valueCodecs;
+	}
+
+	ValueCodecs getValueCodecs() {
+		return valueCodecs;
+	}
+
+	ReferenceTable getReferences() {
+		return references;
 	}
 
 	boolean useProxyAttributes() {
 		return useProxyAttributes;
 	}
 
+	void setBulkLoad(boolean bulkLoad) {
+		this.bulkLoad = bulkLoad;
+	}
+
+	boolean isBulkLoad() {
+		return bulkLoad;
+	}
+
+	void setDeferDelivery(boolean deferDelivery) {
+		this.deferDelivery = deferDelivery;
+	}
+
+	void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Returns the mapper reading the documents referenced by proxies, 
+	 * null if documents are read as text JSON.
+	 */
+	ObjectMapper getObjectMapper() {
+		return objectMapper;
+	}
+
+	void setProjection(Projection projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * Returns the projection of the load, null if whole documents are loaded.
+	 */
+	Projection getProjection() {
+		return projection;
+	}
+
+	void setDeferredContents(DeferredContents deferredContents) {
+		this.deferredContents = deferredContents;
+	}
+
+	/**
+	 * Returns the deferred contents of the load, null if containment lists are read whole.
+	 */
+	DeferredContents getDeferredContents() {
+		return deferredContents;
+	}
+
+	/**
+	 * Returns true if the objects contained by the object being read are loaded.
+	 */
+	boolean includesContained() {
+		return projection == null || projection.includesDepth(level + 1);
+	}
+
+	void setShareProxies(boolean shareProxies) {
+		this.shareProxies = shareProxies;
+	}
+
+	/**
+	 * Returns true if proxies are shared by the loads of the resource set.
+	 */
+	boolean shareProxies() {
+		return shareProxies;
+	}
+
 }
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import static org.eclipselabs.emfjson.common.Constants.EJS_TYPE_KEYWORD;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Nodes of the JSON documents referenced by proxies, used to fill the attributes
+ * of proxies when the option {@link org.eclipselabs.emfjson.EMFJs#OPTION_PROXY_ATTRIBUTES}
+ * is set.
+ *
+ * Each document is read once per load. Its nodes are indexed in one pass by
+ * ID for objects whose EClass has an ID attribute, by path for other objects,
+ * the first node in document order wins. Only nodes with an eClass key are indexed.
+ *
+ * Documents having an {@link ObjectIndex} are not read whole, the node of each
+ * referenced object is read from the position given by the index.
+ */
+class DocumentIndex {
+
+	private final ResourceSet resourceSet;
+	private final Map<URI, Map<String, JsonNode>> documents = new HashMap<URI, Map<String, JsonNode>>();
+	private final Map<URI, ObjectIndex> indexes = new HashMap<URI, ObjectIndex>();
+	private final Map<String, EClass> types = new HashMap<String, EClass>();
+	private ObjectMapper mapper;
+
+	DocumentIndex(ResourceSet resourceSet) {
+		this(resourceSet, null);
+	}
+
+	/**
+	 * Creates an index reading documents with the given mapper, 
+	 * a text JSON mapper if null.
+	 */
+	DocumentIndex(ResourceSet resourceSet, ObjectMapper mapper) {
+		this.resourceSet = resourceSet;
+		this.mapper = mapper;
+	}
+
+	/**
+	 * Returns the node of the object, or null if the document has no such node.
+	 */
+	JsonNode getNode(URI objectURI) {
+		if (!objectURI.hasFragment()) {
+			return null;
+		}
+
+		final URI documentURI = objectURI.trimFragment();
+		Map<String, JsonNode> nodes = documents.get(documentURI);
+
+		if (nodes == null) {
+			final ObjectIndex objectIndex = getObjectIndex(documentURI);
+			if (objectIndex != null) {
+				return read(objectIndex, objectURI.fragment());
+			}
+
+			nodes = index(documentURI);
+			documents.put(documentURI, nodes);
+		}
+
+		return nodes.get(objectURI.fragment());
+	}
+
+	private ObjectIndex getObjectIndex(URI documentURI) {
+		if (!indexes.containsKey(documentURI)) {
+			indexes.put(documentURI, ObjectIndex.read(resourceSet.getURIConverter(), documentURI, null));
+		}
+		return indexes.get(documentURI);
+	}
+
+	private JsonNode read(ObjectIndex objectIndex, String fragment) {
+		if (mapper == null) {
+			mapper = new ObjectMapper();
+		}
+
+		try {
+			final byte[] span = objectIndex.readSpan(resourceSet.getURIConverter(), fragment, null);
+			return span == null ? null : mapper.readTree(span);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return null;
+	}
+
+	private Map<String, JsonNode> index(URI documentURI) {
+		final JsonNode root = read(documentURI);
+
+		if (root == null) {
+			return Collections.emptyMap();
+		}
+
+		final Map<String, JsonNode> nodes = new HashMap<String, JsonNode>();
+		if (root.isArray()) {
+			int pos = 0;
+			for (Iterator<JsonNode> it = root.elements(); it.hasNext(); pos++) {
+				index(it.next(), "/" + pos, nodes);
+			}
+		} else {
+			index(root, "/", nodes);
+		}
+
+		return nodes;
+	}
+
+	private void index(JsonNode node, String path, Map<String, JsonNode> nodes) {
+		final EClass eClass = getEClass(node);
+		if (eClass == null) {
+			return;
+		}
+
+		final EAttribute id = eClass.getEIDAttribute();
+		final String key = id == null ? path : asText(node.get(id.getName()));
+		if (key != null && !nodes.containsKey(key)) {
+			nodes.put(key, node);
+		}
+
+		for (EReference reference: eClass.getEAllContainments()) {
+			final JsonNode value = node.get(reference.getName());
+
+			if (value == null) {
+				continue;
+			}
+
+			final String prefix = path + "/@" + reference.getName();
+			if (value.isArray()) {
+				int pos = 0;
+				for (Iterator<JsonNode> it = value.elements(); it.hasNext(); pos++) {
+					index(it.next(), prefix + (reference.isMany() ? "." : "") + pos, nodes);
+				}
+			} else {
+				index(value, prefix, nodes);
+			}
+		}
+	}
+
+	private EClass getEClass(JsonNode node) {
+		final JsonNode typeNode = node.get(EJS_TYPE_KEYWORD);
+		if (typeNode == null) {
+			return null;
+		}
+
+		final String type = typeNode.asText();
+		if (!types.containsKey(type)) {
+			types.put(type, JSUtil.getEClass(node, resourceSet));
+		}
+
+		return types.get(type);
+	}
+
+	private JsonNode read(URI documentURI) {
+		if (mapper == null) {
+			mapper = new ObjectMapper();
+		}
+
+		InputStream inStream = null;
+		try {
+			inStream = resourceSet.getURIConverter().createInputStream(documentURI);
+			return mapper.readTree(inStream);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (inStream != null) {
+				try {
+					inStream.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private static String asText(JsonNode node) {
+		return node == null ? null : node.asText();
+	}
+
+}
@@ -0,0 +1,420 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import static org.eclipselabs.emfjson.common.Constants.EJS_NS_KEYWORD;
+import static org.eclipselabs.emfjson.common.Constants.EJS_REF_KEYWORD;
+import static org.eclipselabs.emfjson.common.Constants.EJS_TYPE_KEYWORD;
+import static org.eclipselabs.emfjson.common.ModelUtil.isMapEntry;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EDataType;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Evaluates a {@link Query} on the objects of a document while reading its tokens,
+ * objects are not created. Types and keys are resolved with the caches of the
+ * {@link Deserializer}, the same way the {@link StreamDeserializer} does.
+ *
+ * A first scan returns the fragments of the matching objects, fragments are paths
+ * computed from the position of the objects in the document. A second scan of the
+ * same document may then load the matching objects with their contents, other
+ * objects are skipped.
+ */
+class DocumentScanner {
+
+	private final Deserializer deserializer;
+	private final StreamDeserializer stream;
+	private final ObjectMapper mapper;
+	private final Query query;
+	private final EClass rootClass;
+	private final Resource resource;
+
+	/**
+	 * Path of the object being read.
+	 */
+	private final StringBuilder path = new StringBuilder();
+
+	/**
+	 * Paths of the objects that are not created by a load, they
+	 * do not count in the position of the following objects.
+	 */
+	private final Set<String> skipped = new HashSet<String>();
+	private final Map<String, EClass> matches = new LinkedHashMap<String, EClass>();
+
+	private TreeMap<String, EClass> targets;
+	private EList<EObject> loaded;
+
+	DocumentScanner(Deserializer deserializer, ObjectMapper mapper, Query query, EClass rootClass, Resource resource) {
+		this.deserializer = deserializer;
+		this.stream = new StreamDeserializer(deserializer, mapper);
+		this.mapper = mapper;
+		this.query = query;
+		this.rootClass = rootClass;
+		this.resource = resource;
+	}
+
+	/**
+	 * Returns the fragments of the objects matching the query,
+	 * and their EClass, in the order of the document.
+	 */
+	Map<String, EClass> scan(JsonParser parser) throws IOException {
+		readRoots(parser);
+		return matches;
+	}
+
+	/**
+	 * Loads the objects found by a previous scan of the same document, objects
+	 * contained by a loaded object are not returned.
+	 */
+	EList<EObject> load(JsonParser parser) throws IOException {
+		targets = new TreeMap<String, EClass>(matches);
+		loaded = new BasicEList<EObject>();
+
+		if (!targets.isEmpty()) {
+			readRoots(parser);
+		}
+
+		return loaded;
+	}
+
+	private void readRoots(JsonParser parser) throws IOException {
+		int index = 0;
+		JsonToken token;
+
+		while ((token = parser.nextToken()) != null) {
+			if (token == JsonToken.START_OBJECT) {
+				path.setLength(0);
+				path.append('/');
+				if (index > 0) {
+					path.append(index);
+				}
+
+				if (readObject(parser, rootClass, null)) {
+					index++;
+				}
+			} else if (token != JsonToken.START_ARRAY && token != JsonToken.END_ARRAY) {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * Reads the object starting at the current token, returns true if a load
+	 * creates an object for it. The type of the object is determined the same
+	 * way {@link StreamDeserializer} does.
+	 */
+	private boolean readObject(JsonParser parser, EClass eClass, EReference containment) throws IOException {
+		if (targets != null) {
+			final String current = path.toString();
+			final EClass target = targets.get(current);
+
+			if (target != null) {
+				final EObject eObject = stream.readRoot(parser, target, resource);
+				if (eObject != null) {
+					loaded.add(eObject);
+				}
+				return true;
+			} else if (!hasTargets(current)) {
+				parser.skipChildren();
+				return !skipped.contains(current);
+			}
+		}
+
+		if (containment != null) {
+			final EClass referenceType = containment.getEReferenceType();
+			eClass = referenceType.isAbstract() ? null : referenceType;
+		}
+
+		final Match match = targets == null ? new Match() : null;
+		TokenBuffer buffer = null;
+		boolean created = false;
+		String type = null;
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String key = parser.getCurrentName();
+			parser.nextToken();
+
+			if (EJS_NS_KEYWORD.equals(key) && parser.getCurrentToken() == JsonToken.START_OBJECT) {
+				stream.readNamespaces(parser);
+			} else if (created) {
+				readField(eClass, key, parser, match);
+			} else if (containment != null && EJS_REF_KEYWORD.equals(key)) {
+				// proxies are not objects of the document
+				parser.skipChildren();
+				stream.skipFields(parser);
+				return true;
+			} else if (containment != null && EJS_TYPE_KEYWORD.equals(key)) {
+				// the value may still be a proxy, the type is resolved with the next key
+				type = StreamDeserializer.asText(parser);
+				buffer = bufferField(buffer, key, parser);
+			} else if (eClass == null && EJS_TYPE_KEYWORD.equals(key)) {
+				eClass = stream.findType(StreamDeserializer.asText(parser), containment, resource);
+				if (eClass == null) {
+					stream.skipFields(parser);
+					skipped.add(path.toString());
+					return false;
+				}
+				created = true;
+				replay(eClass, buffer, match);
+			} else if (eClass != null || type != null) {
+				if (eClass == null) {
+					eClass = stream.findType(type, containment, resource);
+				}
+				if (eClass == null) {
+					parser.skipChildren();
+					stream.skipFields(parser);
+					skipped.add(path.toString());
+					return false;
+				}
+				created = true;
+				replay(eClass, buffer, match);
+				readField(eClass, key, parser, match);
+			} else {
+				buffer = bufferField(buffer, key, parser);
+			}
+		}
+
+		if (!created && eClass == null && type != null) {
+			eClass = stream.findType(type, containment, resource);
+		} else if (!created && eClass == null && containment != null) {
+			eClass = containment.getEReferenceType();
+		}
+
+		if (eClass == null) {
+			skipped.add(path.toString());
+			return false;
+		}
+
+		if (!created) {
+			replay(eClass, buffer, match);
+		}
+
+		if (match != null && match.matches(eClass)) {
+			matches.put(path.toString(), eClass);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns true if objects to load are contained by the object at the path.
+	 */
+	private boolean hasTargets(String current) {
+		final String prefix = current + "/";
+		final String next = targets.ceilingKey(prefix);
+
+		return next != null && next.startsWith(prefix);
+	}
+
+	private TokenBuffer bufferField(TokenBuffer buffer, String key, JsonParser parser) throws IOException {
+		if (buffer == null) {
+			buffer = new TokenBuffer(mapper, false);
+			buffer.writeStartObject();
+		}
+		buffer.writeFieldName(key);
+		buffer.copyCurrentStructure(parser);
+
+		return buffer;
+	}
+
+	private void replay(EClass eClass, TokenBuffer buffer, Match match) throws IOException {
+		if (buffer == null)
+			return;
+
+		buffer.writeEndObject();
+
+		final JsonParser bufferParser = buffer.asParser();
+		bufferParser.nextToken();
+
+		while (bufferParser.nextToken() == JsonToken.FIELD_NAME) {
+			final String key = bufferParser.getCurrentName();
+			bufferParser.nextToken();
+			readField(eClass, key, bufferParser, match);
+		}
+		bufferParser.close();
+	}
+
+	/**
+	 * Reads the value of a key, only values of the query and
+	 * containments are read, other values are skipped.
+	 */
+	private void readField(EClass eClass, String key, JsonParser parser, Match match) throws IOException {
+		final FeatureIndex index = deserializer.getIndex(eClass);
+		final JsonToken token = parser.getCurrentToken();
+
+		if (token != JsonToken.START_OBJECT) {
+			final EAttribute attribute = index.getEAttribute(key);
+
+			if (attribute != null) {
+				if (match == null) {
+					parser.skipChildren();
+				} else {
+					match.read(attribute, parser);
+				}
+				return;
+			}
+		}
+
+		final EReference reference = index.getEReference(key);
+
+		if (reference == null) {
+			parser.skipChildren();
+			return;
+		}
+
+		if (match != null) {
+			match.present(reference);
+		}
+
+		if (!reference.isContainment() || isMapEntry(reference.getEType()) && token == JsonToken.START_OBJECT) {
+			parser.skipChildren();
+		} else {
+			readContainment(reference, parser);
+		}
+	}
+
+	private void readContainment(EReference reference, JsonParser parser) throws IOException {
+		final int length = path.length();
+
+		if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+			boolean first = true;
+			int position = 0;
+
+			while (parser.nextToken() != JsonToken.END_ARRAY && parser.getCurrentToken() != null) {
+				if (parser.getCurrentToken() == JsonToken.START_OBJECT && (first || reference.isMany())) {
+					appendSegment(reference, reference.isMany() ? position : -1);
+					if (readObject(parser, null, reference)) {
+						position++;
+					}
+					path.setLength(length);
+				} else {
+					parser.skipChildren();
+				}
+				first = false;
+			}
+		} else if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+			appendSegment(reference, reference.isMany() ? 0 : -1);
+			readObject(parser, null, reference);
+			path.setLength(length);
+		} else {
+			parser.skipChildren();
+		}
+	}
+
+	private void appendSegment(EReference reference, int position) {
+		path.append("/@").append(reference.getName());
+		if (position >= 0) {
+			path.append('.').append(position);
+		}
+	}
+
+	/**
+	 * Conditions of the query satisfied by the object being read.
+	 */
+	private class Match {
+
+		private final List<EStructuralFeature> features = query.getPresentFeatures();
+		private final List<EAttribute> attributes = query.getAttributes();
+		private final boolean[] present = new boolean[features.size()];
+		private final boolean[] read = new boolean[attributes.size()];
+		private final boolean[] satisfied = new boolean[attributes.size()];
+
+		void present(EStructuralFeature feature) {
+			for (int i = 0; i < present.length; i++) {
+				if (features.get(i) == feature) {
+					present[i] = true;
+				}
+			}
+		}
+
+		/**
+		 * Reads the values of the attribute if the query has conditions on it.
+		 */
+		void read(EAttribute attribute, JsonParser parser) throws IOException {
+			present(attribute);
+
+			if (!attributes.contains(attribute)) {
+				parser.skipChildren();
+			} else if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+				while (parser.nextToken() != JsonToken.END_ARRAY && parser.getCurrentToken() != null) {
+					evaluate(attribute, readValue(attribute, parser));
+				}
+			} else {
+				evaluate(attribute, readValue(attribute, parser));
+			}
+		}
+
+		private Object readValue(EAttribute attribute, JsonParser parser) throws IOException {
+			final EDataType dataType = attribute.getEAttributeType();
+			return deserializer.getValueCodecs().getCodec(dataType).read(dataType, parser);
+		}
+
+		private void evaluate(EAttribute attribute, Object value) {
+			for (int i = 0; i < read.length; i++) {
+				if (attributes.get(i) == attribute) {
+					read[i] = true;
+					satisfied[i] |= query.satisfies(i, value);
+				}
+			}
+		}
+
+		/**
+		 * Returns true if the object satisfies all conditions, attributes
+		 * without value in the document have their default value.
+		 */
+		boolean matches(EClass eClass) {
+			if (!query.matchesType(eClass)) {
+				return false;
+			}
+
+			for (int i = 0; i < present.length; i++) {
+				if (!present[i]) {
+					return false;
+				}
+			}
+
+			for (int i = 0; i < satisfied.length; i++) {
+				if (!read[i]) {
+					final EAttribute attribute = attributes.get(i);
+					if (attribute.isMany() || !attribute.getEContainingClass().isSuperTypeOf(eClass)
+							|| !query.satisfies(i, attribute.getDefaultValue())) {
+						return false;
+					}
+				} else if (!satisfied[i]) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+}
@@ -10,15 +10,14 @@
  *******************************************************************************/
 package org.eclipselabs.emfjson.map;
 
-import static org.eclipse.emf.ecore.util.EcoreUtil.convertToString;
 import static org.eclipselabs.emfjson.common.ModelUtil.getElementName;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.IOException;
 import java.util.Iterator;
 
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EDataType;
 import org.eclipse.emf.ecore.EEnum;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EReference;
@@ -26,9 +25,14 @@ import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.util.FeatureMap;
 import org.eclipse.emf.ecore.util.FeatureMapUtil;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.DecimalNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 /**
  * 
@@ -44,31 +48,32 @@ class EAttributeSerializer {
 	}
 
 	void serialize(EObject eObject, ObjectNode node) {
-		for (EAttribute eAttribute: eObject.eClass().getEAllAttributes()) {
-
-			if (isCandidate(eObject, eAttribute)) {
-				if (isFeatureMap(eAttribute)) {
-					serializeFeatureMap(eObject, eAttribute, node);
-				}
-				else if (eAttribute.isMany()) {
-					serializeMany(eObject, eAttribute, node);
-				}
-				else {
-					serializeValue(node, eAttribute, eObject.eGet(eAttribute));
+		final SerializationPlan plan = serializer.getPlan(eObject.eClass());
+
+		for (int i = 0; i < plan.attributes.length; i++) {
+
+			if (plan.isAttributeCandidate(eObject, i)) {
+				switch (plan.attributeKinds[i]) {
+				case SerializationPlan.FEATURE_MAP:
+					serializeFeatureMap(eObject, plan.attributes[i], node);
+					break;
+				case SerializationPlan.MANY_VALUES:
+					serializeMany(node, plan.attributeKeys[i], plan.attributes[i], (EList<?>) plan.getAttributeValue(eObject, i));
+					break;
+				default:
+					serializeValue(node, plan.attributeKeys[i], plan.attributes[i], plan.getAttributeValue(eObject, i));
 				}
 			}
 		}
 	}
 
-	void serializeMany(EObject eObject, EAttribute eAttribute, ObjectNode node) {
-		final EList<?> rawValues = (EList<?>) eObject.eGet(eAttribute);
-
+	void serializeMany(ObjectNode node, String key, EAttribute eAttribute, EList<?> rawValues) {
 		if (!rawValues.isEmpty()) {
 			ArrayNode arrayNode = node.arrayNode();
-			node.put(getElementName(eAttribute), arrayNode);
+			node.put(key, arrayNode);
 
 			for (Object val: rawValues) {
-				serializeValue(arrayNode, eAttribute, val);
+				serializeValue(arrayNode, key, eAttribute, val);
 			}
 		}
 	}
@@ -108,100 +113,92 @@ class EAttributeSerializer {
 	void serializeValue(JsonNode node, EAttribute attribute, Object value) {
 		if (value == null) return;
 
-		String key = getElementName(attribute);
-
-		if (value instanceof Integer) {
-			serializeInteger(node, key, (Integer) value);
-		}
-		else if (value instanceof Boolean) {
-			serializeBoolean(node, key, (Boolean) value);
-		}
-		else if (value instanceof Date) {
-			serializeDate(node, key, (Date) value);
-		}
-		else if (value instanceof Double) {
-			serializeDouble(node, key, (Double) value);
-		}
-		else if (value instanceof Long) {
-			serializeLong(node, key, (Long) value);
-		}
-		else if (value instanceof Short) {
-			serializeShort(node, key, (Short) value);
-		}
-		else if (value instanceof Float) {
-			serializeFloat(node, key, (Float) value);
-		}
-		else {
-			serializeString(node, key, 
-					convertToString(attribute.getEAttributeType(),
-							value));
-		}
+		serializeValue(node, getElementName(attribute), attribute, value);
 	}
 
-	void serializeString(JsonNode node, String key, String value) {
-		if (node.isObject()) {
-			((ObjectNode)node).put(key, value);
-		} else {
-			((ArrayNode)node).add(value);
-		}
-	}
+	/**
+	 * Writes the value with the codec of the attribute's data type. Built-in codecs
+	 * create the node of the value, the tokens written by other codecs are converted 
+	 * into a node.
+	 */
+	void serializeValue(JsonNode node, String key, EAttribute attribute, Object value) {
+		if (value == null) return;
 
-	void serializeBoolean(JsonNode node, String key, Boolean value) {
-		if (node.isObject()) {
-			((ObjectNode)node).put(key, value);
-		} else {
-			((ArrayNode)node).add(value);
-		}
-	}
+		final EDataType dataType = attribute.getEAttributeType();
+		final ValueCodec codec = serializer.getValueCodecs().getCodec(dataType);
 
-	void serializeInteger(JsonNode node, String key, Integer value) {
-		if (node.isObject()) {
-			((ObjectNode)node).put(key, value);
-		} else {
-			((ArrayNode)node).add(value);
-		}
-	}
+		try {
+			final JsonNode valueNode = codec instanceof ValueCodecs.NodeCodec ?
+					((ValueCodecs.NodeCodec) codec).toNode(dataType, value, JsonNodeFactory.instance) :
+					toNode(codec, dataType, value);
 
-	void serializeDouble(JsonNode node, String key, Double value) {
-		if (node.isObject()) {
-			((ObjectNode)node).put(key, value);
-		} else {
-			((ArrayNode)node).add(value);
+			if (node.isObject()) {
+				((ObjectNode)node).put(key, valueNode);
+			} else {
+				((ArrayNode)node).add(valueNode);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 
-	void serializeLong(JsonNode node, String key, Long value) {
-		if (node.isObject()) {
-			((ObjectNode)node).put(key, value);
-		} else {
-			((ArrayNode)node).add(value);
-		}
-	}
+	private static JsonNode toNode(ValueCodec codec, EDataType dataType, Object value) throws IOException {
+		final TokenBuffer buffer = new TokenBuffer(null, false);
+		codec.write(dataType, value, buffer);
 
-	void serializeShort(JsonNode node, String key, Short value) {
-		if (node.isObject()) {
-			((ObjectNode)node).put(key, value);
-		} else {
-			((ArrayNode)node).add(value);
-		}
-	}
+		final JsonParser parser = buffer.asParser();
+		parser.nextToken();
+		final JsonNode valueNode = toNode(parser, JsonNodeFactory.instance);
+		parser.close();
 
-	void serializeFloat(JsonNode node, String key, Float value) {
-		if (node.isObject()) {
-			((ObjectNode)node).put(key, value);
-		} else {
-			((ArrayNode)node).add(value);
-		}
+		return valueNode;
 	}
 
-	void serializeDate(JsonNode node, String key, Date value) {
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-		String dateValue = sdf.format(value);
-
-		if (node.isObject()) {
-			((ObjectNode)node).put(key, dateValue);
-		} else {
-			((ArrayNode)node).add(dateValue);
+	private static JsonNode toNode(JsonParser parser, JsonNodeFactory factory) throws IOException {
+		switch (parser.getCurrentToken()) {
+		case VALUE_STRING:
+			return factory.textNode(parser.getText());
+		case VALUE_NUMBER_INT:
+			switch (parser.getNumberType()) {
+			case INT:
+				return factory.numberNode(parser.getIntValue());
+			case LONG:
+				return factory.numberNode(parser.getLongValue());
+			default:
+				return factory.numberNode(parser.getBigIntegerValue());
+			}
+		case VALUE_NUMBER_FLOAT:
+			switch (parser.getNumberType()) {
+			case FLOAT:
+				return factory.numberNode(parser.getFloatValue());
+			case BIG_DECIMAL:
+				// not normalized, keeps the scale of the value
+				return DecimalNode.valueOf(parser.getDecimalValue());
+			default:
+				return factory.numberNode(parser.getDoubleValue());
+			}
+		case VALUE_TRUE:
+			return factory.booleanNode(true);
+		case VALUE_FALSE:
+			return factory.booleanNode(false);
+		case VALUE_EMBEDDED_OBJECT:
+			return factory.pojoNode(parser.getEmbeddedObject());
+		case START_ARRAY:
+			final ArrayNode arrayNode = factory.arrayNode();
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				arrayNode.add(toNode(parser, factory));
+			}
+			return arrayNode;
+		case START_OBJECT:
+			final ObjectNode objectNode = factory.objectNode();
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				final String name = parser.getCurrentName();
+				parser.nextToken();
+				objectNode.put(name, toNode(parser, factory));
+			}
+			return objectNode;
+		default:
+			return factory.nullNode();
 		}
 	}
 
@@ -10,9 +10,7 @@
  *******************************************************************************/
 package org.eclipselabs.emfjson.map;
 
-import static org.eclipselabs.emfjson.common.ModelUtil.getDynamicMapEntryFeature;
-import static org.eclipselabs.emfjson.common.ModelUtil.getEAttribute;
-
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map.Entry;
@@ -20,18 +18,21 @@ import java.util.Map.Entry;
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.ecore.EAttribute;
 import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EDataType;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EStructuralFeature;
-import org.eclipse.emf.ecore.util.EcoreUtil;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 class EAtttributeDeserializer {
 
+	private Deserializer deserializer;
 	private MapDeserializer mapDeserializer;
 
-	EAtttributeDeserializer() {
+	EAtttributeDeserializer(Deserializer deserializer) {
+		this.deserializer = deserializer;
 		this.mapDeserializer = new MapDeserializer();
 	}
 
@@ -41,7 +42,8 @@ class EAtttributeDeserializer {
 			return;
 
 		final ObjectNode root = (ObjectNode) node;
-		final EStructuralFeature dynamicMapEntry = getDynamicMapEntryFeature(eClass);
+		final FeatureIndex index = deserializer.getIndex(eClass);
+		final EStructuralFeature dynamicMapEntry = index.dynamicMapEntry;
 
 		// Iterates over all key values of the JSON Object,
 		// if the value is not an object then
@@ -57,37 +59,69 @@ class EAtttributeDeserializer {
 			if (value.isObject()) // not an attribute
 				continue;
 
-			EAttribute attribute = getEAttribute(eClass, key);
+			EAttribute attribute = index.getEAttribute(key);
 			// we allow deserialization of derived feature to 
 			// populate feature maps.
 			if (attribute != null) {
-				if (value.isArray()) {
-					for (Iterator<JsonNode> itValue = value.elements(); itValue.hasNext();) {
-						deSerializeValue(eObject, attribute, itValue.next());
-					}
-				} else {
-					deSerializeValue(eObject, attribute, value);
-				}
+				deSerialize(eObject, attribute, value);
 			} else if (dynamicMapEntry != null) {
-				@SuppressWarnings("unchecked")
-				EList<EObject> values = (EList<EObject>) eObject.eGet(dynamicMapEntry);
-				values.add(mapDeserializer.deSerializeEntry(key, value));
+				deSerializeEntry(eObject, dynamicMapEntry, key, value);
 			}
 		}
 	}
 
+	/**
+	 * Sets the value of the attribute, the value being a JSON array 
+	 * or a single value.
+	 */
+	void deSerialize(EObject eObject, EAttribute attribute, JsonNode value) {
+		if (value.isArray()) {
+			if (attribute.isMany()) {
+				deserializer.ensureCapacity((Collection<?>) eObject.eGet(attribute), value.size());
+			}
+			for (Iterator<JsonNode> itValue = value.elements(); itValue.hasNext();) {
+				deSerializeValue(eObject, attribute, itValue.next());
+			}
+		} else {
+			deSerializeValue(eObject, attribute, value);
+		}
+	}
+
+	/**
+	 * Adds the key and value to the dynamic map entries of the object.
+	 */
+	void deSerializeEntry(EObject eObject, EStructuralFeature dynamicMapEntry, String key, JsonNode value) {
+		@SuppressWarnings("unchecked")
+		EList<EObject> values = (EList<EObject>) eObject.eGet(dynamicMapEntry);
+		values.add(mapDeserializer.deSerializeEntry(key, value));
+	}
+
 	void deSerializeValue(EObject eObject, EAttribute attribute, JsonNode value) {
-		final String stringValue = value.asText();
+		final JsonParser parser = value.traverse();
+		try {
+			parser.nextToken();
+			deSerializeValue(eObject, attribute, parser);
+			parser.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 
-		if (stringValue != null && !stringValue.trim().isEmpty()) {
-			Object newValue  = EcoreUtil.createFromString(attribute.getEAttributeType(), stringValue);
+	/**
+	 * Reads the value at the current token of the parser with the codec
+	 * of the attribute's data type.
+	 */
+	void deSerializeValue(EObject eObject, EAttribute attribute, JsonParser parser) throws IOException {
+		final EDataType dataType = attribute.getEAttributeType();
+		final Object newValue = deserializer.getValueCodecs().getCodec(dataType).read(dataType, parser);
 
+		if (newValue != null) {
 			if (!attribute.isMany()) {
 				eObject.eSet(attribute, newValue);
 			} else {
 				@SuppressWarnings("unchecked")
 				Collection<Object> values = (Collection<Object>) eObject.eGet(attribute);
-				values.add(newValue);
+				deserializer.addValue(values, newValue);
 			}
 		}
 	}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Iterates over the root objects of a document, reading one root at a time.
+ * Roots are the elements of a top level array, top level objects, or the objects
+ * of each line of a line delimited document. Roots are not added to a resource.
+ *
+ * The references of a root are resolved once the root is read, against the objects
+ * of the resource given to {@link EObjectMapper#readValues(java.io.InputStream, EClass, Resource, java.util.Map)},
+ * other references are proxies. Objects created for a root are not kept by the
+ * iterator once the root has been returned.
+ *
+ * The iterator must be closed if it is not read to the end.
+ *
+ * @since 0.8.0
+ */
+public class EObjectIterator implements Iterator<EObject>, Closeable {
+
+	private final Deserializer deserializer;
+	private final StreamDeserializer stream;
+	private final JsonFactory factory;
+	private final BufferedReader reader;
+	private final EClass rootClass;
+	private final Resource resource;
+	private final FragmentIndex index;
+
+	private JsonParser parser;
+	private EObject next;
+	private boolean closed;
+
+	/**
+	 * Iterates over the roots read by the parser.
+	 */
+	EObjectIterator(Deserializer deserializer, StreamDeserializer stream, JsonParser parser, EClass rootClass, Resource resource) {
+		this(deserializer, stream, null, null, rootClass, resource);
+		this.parser = parser;
+	}
+
+	/**
+	 * Iterates over the roots of each line of the reader, a line that
+	 * cannot be read is reported and skipped.
+	 */
+	EObjectIterator(Deserializer deserializer, StreamDeserializer stream, JsonFactory factory, BufferedReader reader, EClass rootClass, Resource resource) {
+		this.deserializer = deserializer;
+		this.stream = stream;
+		this.factory = factory;
+		this.reader = reader;
+		this.rootClass = rootClass;
+		this.resource = resource;
+		this.index = new FragmentIndex(resource);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !closed) {
+			next = readNext();
+		}
+		return next != null;
+	}
+
+	@Override
+	public EObject next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		final EObject result = next;
+		next = null;
+
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			if (parser != null) {
+				parser.close();
+			}
+			if (reader != null) {
+				reader.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private EObject readNext() {
+		try {
+			while (parser != null || nextLine()) {
+				final EObject root = readRoot();
+
+				if (root != null) {
+					deserializer.resolve(resource, index);
+					deserializer.getProxyFactory().clearProxies();
+					return root;
+				}
+
+				if (reader == null) {
+					break;
+				}
+				parser.close();
+				parser = null;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		close();
+
+		return null;
+	}
+
+	/**
+	 * Creates the parser of the next line that is not blank,
+	 * returns false if there is no such line.
+	 */
+	private boolean nextLine() throws IOException {
+		if (reader == null) {
+			return false;
+		}
+
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.trim().length() > 0) {
+				parser = factory.createParser(line);
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the next root object of the parser, null if the parser has
+	 * no more objects. In a line delimited document, a line that cannot be
+	 * read is reported and its objects are dropped.
+	 */
+	private EObject readRoot() throws IOException {
+		final int size = deserializer.getReferences().size();
+
+		try {
+			JsonToken token;
+			while ((token = parser.nextToken()) != null) {
+				if (token == JsonToken.START_OBJECT) {
+					final EObject root = stream.readRoot(parser, rootClass, resource);
+					if (root != null) {
+						return root;
+					}
+				} else if (token != JsonToken.START_ARRAY && token != JsonToken.END_ARRAY) {
+					parser.skipChildren();
+				}
+			}
+		} catch (IOException e) {
+			if (reader == null) {
+				throw e;
+			}
+			deserializer.getReferences().truncate(size);
+			e.printStackTrace();
+		}
+
+		return null;
+	}
+
+}
@@ -10,99 +10,440 @@
  *******************************************************************************/
 package org.eclipselabs.emfjson.map;
 
-import static java.lang.Boolean.TRUE;
-import static org.eclipselabs.emfjson.EMFJs.OPTION_INDENT_OUTPUT;
-import static org.eclipselabs.emfjson.EMFJs.OPTION_PROXY_ATTRIBUTES;
-import static org.eclipselabs.emfjson.EMFJs.OPTION_ROOT_ELEMENT;
-import static org.eclipselabs.emfjson.EMFJs.OPTION_SERIALIZE_NAMESPACES;
-import static org.eclipselabs.emfjson.EMFJs.OPTION_SERIALIZE_REF_TYPE;
-import static org.eclipselabs.emfjson.EMFJs.OPTION_SERIALIZE_TYPE;
-
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.eclipse.emf.common.util.BasicEList;
 import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.URIConverter;
+import org.eclipse.emf.ecore.util.InternalEList;
+import org.eclipselabs.emfjson.EMFJs;
 
 import com.fasterxml.jackson.core.JsonGenerationException;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /**
- * 
+ * Reads and writes EObjects from and to JSON.
+ *
+ * Options are resolved for each call from the given options map, instances
+ * hold no state specific to a load or a save and can be shared by threads.
+ * The Jackson factory and writers are created once per instance.
+ *
  * @author ghillairet
  * @since 0.6.0
  */
 public class EObjectMapper {
 
-	private boolean serializeTypes = true;
-	private boolean serializeRefTypes = true;
-	private boolean useProxyAttributes = false;
-	private boolean serializeNamespaces = false;
-	private boolean indentOutput = false;
-	private EClass rootClass = null;
+	private static final EObjectMapper shared = new EObjectMapper();
 
-	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final ObjectMapper objectMapper;
+	private final JsonFactory factory;
+	private final ObjectWriter writer;
+	private final ObjectWriter indentWriter;
+
+	/**
+	 * Options used by the methods not taking an options map, 
+	 * only changed by {@link #configure(String, Object)}.
+	 */
+	private volatile MapperOptions defaults = MapperOptions.DEFAULT;
 
 	public EObjectMapper() {
+		this(null);
+	}
+
+	/**
+	 * Creates a mapper that reads and writes documents with the given factory, 
+	 * text JSON if the factory is null. A binary format such as Smile is used 
+	 * by giving its factory, documents keep the same keys and values.
+	 * 
+	 * <pre>
+	 * SmileFactory smile = new SmileFactory();
+	 * smile.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+	 * resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap()
+	 *     .put("sml", new JsResourceFactoryImpl(new EObjectMapper(smile)));
+	 * </pre>
+	 *
+	 * @since 0.8.0
+	 */
+	public EObjectMapper(JsonFactory factory) {
+		this.objectMapper = new ObjectMapper(factory);
+		this.factory = objectMapper.getFactory();
+		this.writer = objectMapper.writer();
+		this.indentWriter = objectMapper.writerWithDefaultPrettyPrinter();
 	}
 
+	/**
+	 * Returns the instance used by resources and streams that are not given one.
+	 *
+	 * @since 0.8.0
+	 */
+	public static EObjectMapper getShared() {
+		return shared;
+	}
+
+	/**
+	 * Reads the content of the input stream in the resource. The EObjects are
+	 * created while the JSON document is read, no {@link JsonNode} is created
+	 * for the whole document.
+	 * 
+	 * If the option {@link org.eclipselabs.emfjson.EMFJs#OPTION_LINE_DELIMITED} is set,
+	 * the document holds one root object per line, see {@link #fromLines(InputStream, Resource, MapperOptions)}.
+	 */
 	public Object from(InputStream inputStream, Resource resource, Map<?, ?> options) {
-		JsonNode node = null;
+		final MapperOptions config = MapperOptions.forLoad(options, defaults);
+		if (config.lineDelimited) {
+			return fromLines(inputStream, resource, config);
+		}
+
 		try {
-			node = objectMapper.readTree(inputStream);
-		} catch (JsonProcessingException e) {
-			e.printStackTrace();
+			return from(factory.createParser(inputStream), resource, options);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 
-		return node == null ? null : from(node, resource, options);
+		return null;
 	}
 
 	public Object from(URL url, Resource resource, Map<?, ?> options) {
-		JsonNode node = null;
+		final MapperOptions config = MapperOptions.forLoad(options, defaults);
+
 		try {
-			node = objectMapper.readTree(url);
-		} catch (JsonProcessingException e) {
+			if (config.lineDelimited) {
+				return fromLines(url.openStream(), resource, config);
+			}
+
+			return from(factory.createParser(url), resource, options);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns an iterator over the root objects of the document, roots are read 
+	 * one at a time and are not added to the resource. The type of the roots is 
+	 * rootClass if not null, or is given by their eClass key. The references of 
+	 * each root are resolved against the objects of the resource, which is not 
+	 * modified.
+	 * 
+	 * If the option {@link org.eclipselabs.emfjson.EMFJs#OPTION_LINE_DELIMITED} is set,
+	 * the document holds one root object per line.
+	 *
+	 * @since 0.8.0
+	 */
+	public EObjectIterator readValues(InputStream inputStream, EClass rootClass, Resource resource, Map<?, ?> options) {
+		final MapperOptions config = MapperOptions.forLoad(options, defaults);
+		final Deserializer from = createDeserializer(config);
+		final StreamDeserializer stream = new StreamDeserializer(from, objectMapper);
+
+		if (config.lineDelimited) {
+			try {
+				final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+				return new EObjectIterator(from, stream, factory, reader, rootClass, resource);
+			} catch (UnsupportedEncodingException e) {
+				e.printStackTrace();
+			}
+		} else {
+			try {
+				return new EObjectIterator(from, stream, factory.createParser(inputStream), rootClass, resource);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the URIs of the objects of the resource's document matching the query.
+	 * The document is read from the URI of the resource without creating its objects,
+	 * the resource is not loaded. The fragments of the URIs are the paths of the objects,
+	 * they are the fragments the objects would have in the loaded resource.
+	 *
+	 * @since 0.8.0
+	 */
+	public List<URI> find(Query query, Resource resource, Map<?, ?> options) {
+		final MapperOptions config = MapperOptions.forLoad(options, defaults);
+		final DocumentScanner scanner = new DocumentScanner(createDeserializer(config), objectMapper, query, config.rootClass, resource);
+		final List<URI> uris = new ArrayList<URI>();
+
+		try {
+			for (String fragment: scan(scanner, resource, options).keySet()) {
+				uris.add(resource.getURI().appendFragment(fragment));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return uris;
+	}
+
+	/**
+	 * Returns the objects of the resource's document matching the query, loaded with 
+	 * their contents. The document is read twice from the URI of the resource, first to 
+	 * find the matching objects, then to load them, other objects are not created. 
+	 * 
+	 * Objects are not added to the resource, matching objects contained by a returned 
+	 * object are not returned. References are resolved against the objects of the resource, 
+	 * other references are proxies.
+	 *
+	 * @since 0.8.0
+	 */
+	public EList<EObject> findObjects(Query query, Resource resource, Map<?, ?> options) {
+		final MapperOptions config = MapperOptions.forLoad(options, defaults);
+		final Deserializer from = createDeserializer(config);
+		final DocumentScanner scanner = new DocumentScanner(from, objectMapper, query, config.rootClass, resource);
+
+		EList<EObject> result = new BasicEList<EObject>();
+		try {
+			if (!scan(scanner, resource, options).isEmpty()) {
+				final JsonParser parser = createParser(resource, options);
+				try {
+					result = scanner.load(parser);
+				} finally {
+					parser.close();
+				}
+				from.resolve(resource);
+			}
+		} catch (IOException e) {
 			e.printStackTrace();
+		}
+
+		return result;
+	}
+
+	private Map<String, EClass> scan(DocumentScanner scanner, Resource resource, Map<?, ?> options) throws IOException {
+		final JsonParser parser = createParser(resource, options);
+		try {
+			return scanner.scan(parser);
+		} finally {
+			parser.close();
+		}
+	}
+
+	private JsonParser createParser(Resource resource, Map<?, ?> options) throws IOException {
+		final ResourceSet resourceSet = resource.getResourceSet();
+		final URIConverter converter = resourceSet == null ? URIConverter.INSTANCE : resourceSet.getURIConverter();
+
+		return factory.createParser(converter.createInputStream(resource.getURI(), options));
+	}
+
+	/**
+	 * Reads a document holding a JSON object per line, each object being a root 
+	 * of the resource, or the namespaces of the document if it only has a namespace 
+	 * key. Lines are read one at a time, a line that cannot be read is reported and 
+	 * skipped, the objects of the other lines are added to the resource.
+	 */
+	private EList<EObject> fromLines(InputStream inputStream, Resource resource, MapperOptions config) {
+		final Deserializer from = createDeserializer(config);
+		final StreamDeserializer stream = new StreamDeserializer(from, objectMapper);
+		final EList<EObject> result = new BasicEList<EObject>();
+
+		BufferedReader reader = null;
+		try {
+			try {
+				reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.trim().length() > 0) {
+						readLine(line, stream, from.getReferences(), config, resource, result);
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				if (reader != null) {
+					try {
+						reader.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+
+			resource.getContents().addAll(result);
+			from.resolve(resource);
+		} finally {
+			from.restoreDelivery();
+		}
+
+		return result;
+	}
+
+	private void readLine(String line, StreamDeserializer stream, ReferenceTable references, 
+			MapperOptions config, Resource resource, EList<EObject> result) {
+
+		// references of a line that cannot be read are dropped with its objects
+		final int size = references.size();
+
+		JsonParser parser = null;
+		try {
+			parser = factory.createParser(line);
+
+			final Object value = stream.from(parser, config.rootClass, resource);
+			if (value instanceof EObject) {
+				result.add((EObject) value);
+			} else if (value instanceof EList) {
+				@SuppressWarnings("unchecked")
+				EList<EObject> list = (EList<EObject>) value;
+				result.addAll(list);
+			}
 		} catch (IOException e) {
+			references.truncate(size);
 			e.printStackTrace();
+		} finally {
+			if (parser != null) {
+				try {
+					parser.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the document of the parser in the resource.
+	 * 
+	 * If the option {@link org.eclipselabs.emfjson.EMFJs#OPTION_LAZY_CONTAINMENT} is set and the 
+	 * resource implements {@link DeferredContents.Host}, containment lists longer than the threshold 
+	 * of the option are not read whole, see {@link DeferredContents}. 
+	 */
+	public Object from(JsonParser parser, Resource resource, Map<?, ?> options) {
+		final MapperOptions config = MapperOptions.forLoad(options, defaults);
+
+		final Deserializer from = createDeserializer(config);
+		from.setDeferredContents(createDeferredContents(config, resource, options, from.getNamespaces()));
+		final StreamDeserializer stream = new StreamDeserializer(from, objectMapper);
+
+		Object result = null;
+		try {
+			try {
+				result = stream.from(parser, config.rootClass, resource);
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				try {
+					parser.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+
+			if (result instanceof EObject) {
+				resource.getContents().add((EObject) result);
+				from.resolve(resource);
+			} else if (result instanceof EList) {
+				@SuppressWarnings("unchecked")
+				EList<EObject> list = (EList<EObject>) result;
+				resource.getContents().addAll(list);
+				from.resolve(resource);
+			}
+		} finally {
+			from.restoreDelivery();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the deferred contents of a load reading lists up to the threshold of the option 
+	 * {@link org.eclipselabs.emfjson.EMFJs#OPTION_LAZY_CONTAINMENT}, null if lists are read whole. 
+	 * Elements are only deferred for text JSON documents that the resource can read again, 
+	 * and if no projection is given.
+	 */
+	private DeferredContents createDeferredContents(MapperOptions config, Resource resource, Map<?, ?> options, Map<String, String> namespaces) {
+		final Object threshold = options == null ? null : options.get(EMFJs.OPTION_LAZY_CONTAINMENT);
+
+		if (!(threshold instanceof Integer) || (Integer) threshold < 0 || !(resource instanceof DeferredContents.Host) || 
+				config.projection != null || !JsonFactory.FORMAT_NAME_JSON.equals(factory.getFormatName())) {
+			return null;
 		}
 
-		return node == null ? null : from(node, resource, options);
+		return DeferredContents.attach(resource, this, new HashMap<Object, Object>(options), namespaces, (Integer) threshold);
+	}
+
+	/**
+	 * Reads deferred elements of a containment list, the stream starts at the array of the 
+	 * list in the document. Elements are added to the list, at their position if it has not 
+	 * been changed, and their references are resolved against the objects of the resource.
+	 */
+	void readDeferred(InputStream inputStream, DeferredContents deferred, DeferredContents.Entry entry, Resource resource) throws IOException {
+		final MapperOptions config = MapperOptions.forLoad(deferred.getOptions(), defaults);
+
+		final Deserializer from = createDeserializer(config);
+		from.putNamespaces(deferred.getNamespaces());
+		from.setDeferredContents(deferred);
+		final StreamDeserializer stream = new StreamDeserializer(from, objectMapper);
+		stream.setBaseOffset(entry.offset);
+
+		final EList<EObject> values;
+		final JsonParser parser = factory.createParser(inputStream);
+		try {
+			values = stream.readElements(parser, entry.reference, entry.skip, resource);
+		} finally {
+			parser.close();
+		}
+
+		@SuppressWarnings("unchecked")
+		final InternalEList<EObject> list = (InternalEList<EObject>) entry.owner.eGet(entry.reference);
+		list.addAllUnique(Math.min(entry.position, list.size()), values);
+		from.resolve(resource);
 	}
 
 	public Object from(JsonNode node, Resource resource, Map<?, ?> options) {
 		if (node == null)
 			return null;
 
-		configureDeserializer(options);
+		final MapperOptions config = MapperOptions.forLoad(options, defaults);
 
 		if (node.isArray()) {
-			return from((ArrayNode) node, resource);
+			return from((ArrayNode) node, resource, config);
 		} else if (node.isObject()) {
-			return from((ObjectNode) node, resource);
+			return from((ObjectNode) node, resource, config);
 		} else {
 			return null;
 		}
 	}
 
 	public EObject from(ObjectNode node, Resource resource) {
+		return from(node, resource, defaults);
+	}
+
+	public EList<EObject> from(ArrayNode node, Resource resource) {
+		return from(node, resource, defaults);
+	}
+
+	private EObject from(ObjectNode node, Resource resource, MapperOptions config) {
 		final EList<EObject> contents = resource.getContents();
-		Deserializer from = new Deserializer(useProxyAttributes);
-		EObject result = from.from(node, rootClass, resource);
+		Deserializer from = createDeserializer(config);
+		EObject result = from.from(node, config.rootClass, resource);
 		if (result != null) {
 			contents.add(result);
 			from.resolve(resource);
@@ -111,11 +452,11 @@ public class EObjectMapper {
 		return result;
 	}
 
-	public EList<EObject> from(ArrayNode node, Resource resource) {
+	private EList<EObject> from(ArrayNode node, Resource resource, MapperOptions config) {
 		final EList<EObject> contents = resource.getContents();
 
-		Deserializer from = new Deserializer(useProxyAttributes);
-		EList<EObject> result = from.from(node, rootClass, resource);
+		Deserializer from = createDeserializer(config);
+		EList<EObject> result = from.from(node, config.rootClass, resource);
 		contents.addAll(result);
 		from.resolve(resource);
 
@@ -123,127 +464,226 @@ public class EObjectMapper {
 	}
 
 	public JsonNode to(Resource resource, Map<?, ?> options) {
-		configureSerializer(options);
-
-		Serializer to = new Serializer();
-		to.setSerializeNamespaces(serializeNamespaces);
-		to.setSerializeRefTypes(serializeRefTypes);
-		to.setSerializeTypes(serializeTypes);
-
-		return to.to(resource, objectMapper);
+		return createSerializer(MapperOptions.forSave(options, defaults)).to(resource, objectMapper);
 	}
 
 	public ObjectNode to(EObject eObject, Resource resource) {
-		Serializer to = new Serializer();
-		to.setSerializeNamespaces(serializeNamespaces);
-		to.setSerializeRefTypes(serializeRefTypes);
-		to.setSerializeTypes(serializeTypes);
-
-		return to.to(eObject, resource, objectMapper);
+		return createSerializer(defaults).to(eObject, resource, objectMapper);
 	}
 
 	public ObjectNode to(EObject eObject, Resource resource, Map<?, ?> options) {
-		return to(eObject, resource);
+		return createSerializer(MapperOptions.forSave(options, defaults)).to(eObject, resource, objectMapper);
 	}
 
+	/**
+	 * Writes the content of the resource in the output stream. The JSON document
+	 * is directly written in the stream, no {@link JsonNode} is created.
+	 */
 	public void write(OutputStream outStream, Resource resource, Map<?, ?> options) {
-		write(outStream, to(resource, options));
-	}
+		final MapperOptions config = MapperOptions.forSave(options, defaults);
 
-	public void write(OutputStream output, JsonNode current) {
-		if (indentOutput) {
-			objectMapper.configure(SerializationFeature.INDENT_OUTPUT, true);
-		}
+		final StreamSerializer to = createStreamSerializer(config);
 
 		try {
-			objectMapper.writeValue(output, current);
-		} catch (JsonGenerationException e) {
-			e.printStackTrace();
-		} catch (JsonMappingException e) {
-			e.printStackTrace();
+			JsonGenerator generator = factory.createGenerator(outStream);
+			if (config.indentOutput && !config.lineDelimited) {
+				generator.useDefaultPrettyPrinter();
+			}
+			to.to(resource, generator, objectMapper);
+			generator.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
-	private void configureDeserializer(Map<?, ?> options) {
-		if (options == null) {
-			options = Collections.emptyMap();
+	/**
+	 * Writes the content of the resource in the output stream like {@link #write(OutputStream, Resource, Map)}, 
+	 * and returns the positions of its objects in the written document. The index is only valid if the 
+	 * document is stored as written, without compression. Returns null if the mapper does not write 
+	 * text JSON, or if the document could not be written.
+	 *
+	 * @since 0.8.0
+	 */
+	public ObjectIndex writeWithIndex(OutputStream outStream, Resource resource, Map<?, ?> options) {
+		if (!JsonFactory.FORMAT_NAME_JSON.equals(factory.getFormatName())) {
+			write(outStream, resource, options);
+			return null;
 		}
 
-		if (options.containsKey(OPTION_ROOT_ELEMENT)) {
-			Object optionEClass = options.get(OPTION_ROOT_ELEMENT);
-			if (optionEClass instanceof EClass) {
-				configure(OPTION_ROOT_ELEMENT, (EClass) optionEClass);
+		final MapperOptions config = MapperOptions.forSave(options, defaults);
+
+		final StreamSerializer to = createStreamSerializer(config);
+		final StreamSerializer.CountingOutputStream counter = 
+				new StreamSerializer.CountingOutputStream(new BufferedOutputStream(outStream));
+		final ObjectIndex index = new ObjectIndex();
+		to.setIndex(index, counter);
+
+		try {
+			JsonGenerator generator = factory.createGenerator(counter);
+			generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+			if (config.indentOutput && !config.lineDelimited) {
+				generator.useDefaultPrettyPrinter();
 			}
+			to.to(resource, generator, objectMapper);
+			generator.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
 		}
 
-		configure(OPTION_PROXY_ATTRIBUTES, TRUE.equals(options.get(OPTION_PROXY_ATTRIBUTES)));
+		index.setDocument(resource.getURI(), counter.getCount(), to.getNamespaces());
+
+		return index;
 	}
 
-	private void configureSerializer(Map<?, ?> options) {
-		if (options == null) {
-			options = Collections.emptyMap();
+	/**
+	 * Reads the object of the fragment from the document of the resource, with the index 
+	 * written next to the document by a save with the option {@link org.eclipselabs.emfjson.EMFJs#OPTION_SAVE_INDEX}. 
+	 * Only the bytes of the object are read, the resource is not loaded. 
+	 * 
+	 * The object is not added to the resource, its references are resolved against the objects 
+	 * of the resource, other references are proxies. Returns null if the document has no index, 
+	 * if its index is out of date, or if the object of the fragment is not indexed.
+	 *
+	 * @since 0.8.0
+	 */
+	public EObject readObject(Resource resource, String fragment, Map<?, ?> options) {
+		final ObjectIndex index = ObjectIndex.get(resource, options);
+		if (index == null) {
+			return null;
 		}
 
-		boolean serializeTypes = true;
-		boolean serializeRefTypes = true;
-		boolean serializeNamespaces = false;
-		boolean indent = true;
+		final MapperOptions config = MapperOptions.forLoad(options, defaults);
+		final Deserializer from = createDeserializer(config);
+		from.putNamespaces(index.getNamespaces());
 
-		if (options.containsKey(OPTION_INDENT_OUTPUT)) {
-			try {
-				indent = (Boolean) options.get(OPTION_INDENT_OUTPUT);
-			} catch (ClassCastException e) {
-				e.printStackTrace();
+		EObject result = null;
+		try {
+			final byte[] span = index.readSpan(ObjectIndex.getURIConverter(resource.getResourceSet()), fragment, options);
+			if (span == null) {
+				return null;
 			}
-		}
-		if (options.containsKey(OPTION_SERIALIZE_TYPE)) {
+
+			final EClass eClass = from.getEClass(index.getType(fragment), resource.getResourceSet());
+			final JsonParser parser = factory.createParser(span);
 			try {
-				serializeTypes = (Boolean) options.get(OPTION_SERIALIZE_TYPE);
-			} catch (ClassCastException e) {
-				e.printStackTrace();
+				if (parser.nextToken() == JsonToken.START_OBJECT) {
+					result = new StreamDeserializer(from, objectMapper).readRoot(parser, eClass, resource);
+				}
+			} finally {
+				parser.close();
 			}
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		if (options.containsKey(OPTION_SERIALIZE_REF_TYPE)) {
-			try {
-				serializeRefTypes = (Boolean) options.get(OPTION_SERIALIZE_REF_TYPE);
-			} catch (ClassCastException e) {
-				e.printStackTrace();
-			}
+
+		if (result != null) {
+			from.resolve(resource);
 		}
-		if (options.containsKey(OPTION_SERIALIZE_NAMESPACES)) {
-			try {
-				serializeNamespaces = (Boolean) options.get(OPTION_SERIALIZE_NAMESPACES);
-			} catch (ClassCastException e) {
-				e.printStackTrace();
+
+		return result;
+	}
+
+	/**
+	 * Returns a writer writing root objects one at a time in the output stream, as
+	 * roots of the resource. The writer must be closed to end the document.
+	 * 
+	 * If the option {@link org.eclipselabs.emfjson.EMFJs#OPTION_LINE_DELIMITED} is set,
+	 * each root is written on its own line. If the option {@link org.eclipselabs.emfjson.EMFJs#OPTION_FLUSH_THRESHOLD}
+	 * is set to a positive Integer, the stream is flushed each time this number of roots 
+	 * has been written.
+	 *
+	 * @since 0.8.0
+	 */
+	public EObjectWriter writer(OutputStream outStream, Resource resource, Map<?, ?> options) {
+		final MapperOptions config = MapperOptions.forSave(options, defaults);
+		final Object threshold = options == null ? null : options.get(EMFJs.OPTION_FLUSH_THRESHOLD);
+
+		final StreamSerializer to = createStreamSerializer(config);
+
+		try {
+			JsonGenerator generator = factory.createGenerator(outStream);
+			if (config.indentOutput && !config.lineDelimited) {
+				generator.useDefaultPrettyPrinter();
 			}
+			return new EObjectWriter(to, generator, objectMapper, resource, 
+					threshold instanceof Integer ? (Integer) threshold : 0);
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 
-		configure(OPTION_SERIALIZE_TYPE, serializeTypes);
-		configure(OPTION_SERIALIZE_REF_TYPE, serializeRefTypes);
-		configure(OPTION_SERIALIZE_NAMESPACES, serializeNamespaces);
-		configure(OPTION_INDENT_OUTPUT, indent);
+		return null;
 	}
 
-	public void configure(String key, Object value) {
-		if (OPTION_SERIALIZE_TYPE.equals(key)) {
-			serializeTypes = (Boolean) value;
-		}
-		if (OPTION_SERIALIZE_REF_TYPE.equals(key)) {
-			serializeRefTypes = (Boolean) value;
-		}
-		if (OPTION_SERIALIZE_NAMESPACES.equals(key)) {
-			serializeNamespaces = (Boolean) value;
-		}
-		if (OPTION_ROOT_ELEMENT.equals(key)) {
-			rootClass = (EClass) value;
-		}
-		if (OPTION_PROXY_ATTRIBUTES.equals(key)) {
-			useProxyAttributes = (Boolean) value;
+	public void write(OutputStream output, JsonNode current) {
+		write(output, current, defaults.indentOutput);
+	}
+
+	/**
+	 * Writes the node in the output stream, indented if the option 
+	 * {@link org.eclipselabs.emfjson.EMFJs#OPTION_INDENT_OUTPUT} is set.
+	 *
+	 * @since 0.8.0
+	 */
+	public void write(OutputStream output, JsonNode current, Map<?, ?> options) {
+		write(output, current, MapperOptions.forSave(options, defaults).indentOutput);
+	}
+
+	private void write(OutputStream output, JsonNode current, boolean indent) {
+		try {
+			(indent ? indentWriter : writer).writeValue(output, current);
+		} catch (JsonGenerationException e) {
+			e.printStackTrace();
+		} catch (JsonMappingException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		if (OPTION_INDENT_OUTPUT.equals(key)) {
-			indentOutput = (Boolean) value;
+	}
+
+	private Deserializer createDeserializer(MapperOptions config) {
+		final Deserializer deserializer = new Deserializer(config.useProxyAttributes);
+		deserializer.setValueCodecs(config.valueCodecs);
+		deserializer.setShareProxies(config.shareProxies);
+		deserializer.setBulkLoad(config.bulkLoad);
+		deserializer.setDeferDelivery(config.bulkLoad || config.deferAdapters);
+		deserializer.setObjectMapper(objectMapper);
+		deserializer.setProjection(config.projection);
+
+		return deserializer;
+	}
+
+	private Serializer createSerializer(MapperOptions config) {
+		final Serializer serializer = new Serializer();
+		serializer.setSerializeNamespaces(config.serializeNamespaces);
+		serializer.setSerializeRefTypes(config.serializeRefTypes);
+		serializer.setSerializeTypes(config.serializeTypes);
+		serializer.setValueCodecs(config.valueCodecs);
+
+		return serializer;
+	}
+
+	private StreamSerializer createStreamSerializer(MapperOptions config) {
+		final StreamSerializer serializer = new StreamSerializer();
+		serializer.setSerializeNamespaces(config.serializeNamespaces);
+		serializer.setSerializeRefTypes(config.serializeRefTypes);
+		serializer.setSerializeTypes(config.serializeTypes);
+		serializer.setValueCodecs(config.valueCodecs);
+		serializer.setLineDelimited(config.lineDelimited);
+
+		return serializer;
+	}
+
+	/**
+	 * Sets the option used by the methods that do not take an options map.
+	 *
+	 * @deprecated options should be given to each call, changing the options of
+	 * a shared instance affects all its users.
+	 */
+	@Deprecated
+	public void configure(String key, Object value) {
+		synchronized (this) {
+			defaults = defaults.with(key, value);
 		}
 	}
 
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import static org.eclipselabs.emfjson.common.Constants.EJS_NS_KEYWORD;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes the root objects of a document one at a time, in an open stream.
+ * Roots are written as the elements of a top level array, or each on its own
+ * line if the document is line delimited. The array is closed, and the stream
+ * with it, when the writer is closed.
+ *
+ * Roots do not need to be contained by a resource, they are then written as
+ * roots of the resource given to {@link EObjectMapper#writer(java.io.OutputStream, Resource, Map)}.
+ * References to objects of a resource are written with the URI of the object, references
+ * to objects without resource are written with the ID of the object, and are resolved
+ * against the other roots of the document when it is read.
+ *
+ * If namespaces are serialized, namespaces used by a root that were not written
+ * before are written before the root, in an object without eClass key.
+ *
+ * @since 0.8.0
+ */
+public class EObjectWriter implements Closeable, Flushable {
+
+	private final StreamSerializer serializer;
+	private final JsonGenerator generator;
+	private final ObjectMapper mapper;
+	private final Resource resource;
+	private final int flushThreshold;
+	private final Set<String> namespaces = new HashSet<String>();
+
+	private int unflushed;
+	private boolean closed;
+
+	EObjectWriter(StreamSerializer serializer, JsonGenerator generator, ObjectMapper mapper, Resource resource, int flushThreshold) throws IOException {
+		this.serializer = serializer;
+		this.generator = generator;
+		this.mapper = mapper;
+		this.resource = resource;
+		this.flushThreshold = flushThreshold;
+
+		serializer.setDetachedRoots(true);
+		serializer.useTypeTags(resource);
+
+		if (serializer.lineDelimited) {
+			generator.setRootValueSeparator(null);
+		} else {
+			generator.writeStartArray();
+		}
+	}
+
+	/**
+	 * Writes the object as the next root of the document. The stream is flushed each time
+	 * the number of roots given by the option {@link org.eclipselabs.emfjson.EMFJs#OPTION_FLUSH_THRESHOLD}
+	 * have been written.
+	 */
+	public void write(EObject eObject) throws IOException {
+		if (closed) {
+			throw new IOException("Writer is closed");
+		}
+
+		final Resource rootResource = eObject.eResource() == null ? resource : eObject.eResource();
+
+		if (serializer.serializeNamespaces) {
+			serializer.collectNamespaces(eObject, rootResource, mapper);
+			writeNamespaces();
+		}
+
+		serializer.writeObject(eObject, rootResource, generator, mapper);
+		endRoot();
+
+		if (flushThreshold > 0 && ++unflushed >= flushThreshold) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the namespaces that have not been written yet.
+	 */
+	private void writeNamespaces() throws IOException {
+		final Map<String, String> used = serializer.getNamespaces();
+
+		if (namespaces.size() == used.size()) {
+			return;
+		}
+
+		generator.writeStartObject();
+		generator.writeFieldName(EJS_NS_KEYWORD);
+		generator.writeStartObject();
+		for (String key: used.keySet()) {
+			if (namespaces.add(key)) {
+				generator.writeStringField(key, used.get(key));
+			}
+		}
+		generator.writeEndObject();
+		generator.writeEndObject();
+		endRoot();
+	}
+
+	private void endRoot() throws IOException {
+		if (serializer.lineDelimited) {
+			generator.writeRaw('\n');
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		unflushed = 0;
+		generator.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		if (!serializer.lineDelimited) {
+			generator.writeEndArray();
+		}
+		generator.close();
+	}
+
+}
@@ -11,11 +11,10 @@
 package org.eclipselabs.emfjson.map;
 
 import static org.eclipselabs.emfjson.common.Constants.EJS_REF_KEYWORD;
-import static org.eclipselabs.emfjson.common.ModelUtil.getEReference;
+import static org.eclipselabs.emfjson.common.Constants.EJS_TYPE_KEYWORD;
 import static org.eclipselabs.emfjson.common.ModelUtil.isMapEntry;
 
 import java.util.Iterator;
-import java.util.Map.Entry;
 
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.ecore.EClass;
@@ -36,29 +35,39 @@ class EReferenceDeserializer {
 		this.mapDeserializer = new MapDeserializer();
 	}
 
-	void deSerialize(EObject eObject, ObjectNode node, Resource resource) {
-		if (!node.isObject())
-			return;
-
-		final EClass eClass = eObject.eClass();
-		final ObjectNode root = (ObjectNode) node;
-
-		for (Iterator<Entry<String, JsonNode>> it = root.fields(); it.hasNext();) {
-			Entry<String, JsonNode> field = it.next();
-
-			String key = field.getKey();
-			JsonNode value = field.getValue();
-			EReference reference = getEReference(eClass, key);
-
-			// we allow deserialization of derived feature to 
-			// populate feature maps.
-			if (reference != null && reference.isContainment()) {
-				if (isMapEntry(reference.getEType()) && value.isObject()) {
-					mapDeserializer.deSerializeMapEntry(eObject, reference, value);
-				} else {
-					deSerializeContainment(eObject, reference, root, value, resource);
-				}
+	/**
+	 * Reads the value of the reference, contained objects are created and 
+	 * cross references are added to the references resolved after the load.
+	 */
+	void deSerialize(EObject eObject, EReference reference, ObjectNode root, JsonNode value, Resource resource) {
+		// we allow deserialization of derived feature to 
+		// populate feature maps.
+		if (reference.isContainment()) {
+			if (isMapEntry(reference.getEType()) && value.isObject()) {
+				mapDeserializer.deSerializeMapEntry(eObject, reference, value);
+			} else {
+				deSerializeContainment(eObject, reference, root, value, resource);
+			}
+		} else if (value.isArray()) {
+			for (Iterator<JsonNode> itEl = value.elements(); itEl.hasNext();) {
+				addReference(eObject, reference, itEl.next());
 			}
+		} else {
+			addReference(eObject, reference, value);
+		}
+	}
+
+	/**
+	 * Adds the non containment reference to the references resolved 
+	 * once the whole document has been read.
+	 */
+	void addReference(EObject eObject, EReference reference, JsonNode value) {
+		if (value.isObject() && value.has(EJS_REF_KEYWORD)) {
+			final JsonNode typeNode = value.get(EJS_TYPE_KEYWORD);
+
+			deserializer.getReferences().add(eObject, reference, 
+					value.get(EJS_REF_KEYWORD).asText(), 
+					typeNode == null ? null : typeNode.asText());
 		}
 	}
 
@@ -68,12 +77,13 @@ class EReferenceDeserializer {
 			if (reference.isMany()) {
 				@SuppressWarnings("unchecked")
 				EList<EObject> values = (EList<EObject>) eObject.eGet(reference);
+				deserializer.ensureCapacity(values, value.size());
 
 				for (Iterator<JsonNode> it = value.elements(); it.hasNext();) {
 					JsonNode current = it.next();
 					EObject contained = createContainedObject(reference, root, current, resource);
 					if (contained != null)
-						values.add(contained);
+						deserializer.addContained(values, contained);
 				}
 			} else if (value.elements().hasNext()) {
 				JsonNode current = value.elements().next();
@@ -89,7 +99,7 @@ class EReferenceDeserializer {
 				@SuppressWarnings("unchecked")
 				EList<EObject> values = (EList<EObject>) eObject.eGet(reference);
 				if (contained != null)
-					values.add(contained);
+					deserializer.addContained(values, contained);
 			} else {
 				if (contained != null)
 					eObject.eSet(reference, contained);
@@ -98,7 +108,11 @@ class EReferenceDeserializer {
 	}
 
 	EObject createContainedObject(EReference reference, JsonNode root, JsonNode node, Resource resource) {
-		EClass eClass = JSUtil.findEClass(reference.getEReferenceType(), node, root, resource, deserializer.getNamespaces());
+		if (!deserializer.includesContained()) {
+			return null;
+		}
+
+		EClass eClass = JSUtil.findEClass(reference.getEReferenceType(), node, root, deserializer.getNodeIndex(), resource, deserializer.getNamespaces());
 		EObject obj = null;
 
 		if (isRefNode(node)) {
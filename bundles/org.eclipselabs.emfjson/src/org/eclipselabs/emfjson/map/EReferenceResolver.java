@@ -10,13 +10,7 @@
  *******************************************************************************/
 package org.eclipselabs.emfjson.map;
 
-import static org.eclipselabs.emfjson.common.Constants.EJS_REF_KEYWORD;
 import static org.eclipselabs.emfjson.common.ModelUtil.getEObjectURI;
-import static org.eclipselabs.emfjson.common.ModelUtil.getEReference;
-
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EClass;
@@ -25,81 +19,103 @@ import org.eclipse.emf.ecore.EReference;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.util.InternalEList;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
 class EReferenceResolver {
 
 	private Deserializer deserializer;
+	private FragmentIndex index;
 
 	EReferenceResolver(Deserializer deserializer) {
 		this.deserializer = deserializer;
 	}
 
-	void resolve(Map<EObject, JsonNode> processed, Resource resource) {
-		for (EObject eObject : processed.keySet()) {
-			resolve(eObject, processed.get(eObject), resource);
-		}
+	void resolve(ReferenceTable references, Resource resource) {
+		resolve(references, resource, new FragmentIndex(resource));
 	}
 
-	void resolve(EObject eObject, JsonNode node, Resource resource) {
-
-		if (!node.isObject())
-			return;
-
-		final EClass eClass = eObject.eClass();
-		final ObjectNode root = (ObjectNode) node;
-
-		for (Iterator<Entry<String, JsonNode>> it = root.fields(); it.hasNext();) {
-			Entry<String, JsonNode> field = it.next();
+	/**
+	 * Resolves the references with an index of the resource kept by the caller 
+	 * across several calls.
+	 */
+	void resolve(ReferenceTable references, Resource resource, FragmentIndex index) {
+		this.index = index;
 
-			String key = field.getKey();
-			JsonNode value = field.getValue();
-			EReference reference = getEReference(eClass, key);
-
-			// we allow deserialization of derived feature to 
-			// populate feature maps.
-			if (reference != null && !reference.isContainment()) {
-				if (value.isArray()) {
-					for (Iterator<JsonNode> itEl = value.elements(); itEl.hasNext();) {
-						JsonNode current = itEl.next();
-						createProxyReference(eObject, root, current, reference, resource);
-					}
-				} else {
-					createProxyReference(eObject, root, value, reference, resource);
-				}
-			}
+		for (int i = 0; i < references.size(); i++) {
+			createProxyReference(references.getOwner(i), references.getReference(i), 
+					references.getRef(i), references.getType(i), resource);
 		}
+
+		index = null;
 	}
 
-	EObject getOrCreateProxyReference(EReference reference, JsonNode root, JsonNode node, Resource resource) {
-		EObject obj = findEObject(resource, node);
+	EObject getOrCreateProxyReference(EObject eObject, EReference reference, String ref, String type, Resource resource) {
+		EObject obj = findEObject(resource, ref);
 		if (obj == null) {
-			EClass refClass = JSUtil.findEClass(reference.getEReferenceType(), node, root, resource, deserializer.getNamespaces());
+			EClass refClass = JSUtil.findEClass(reference.getEReferenceType(), type, ref, eObject, resource, deserializer.getNamespaces());
 			if (refClass != null) {
-				obj = deserializer.getProxyFactory().createProxy(resource, refClass, node);
+				obj = isShareable(reference) ?
+						deserializer.getProxyFactory().getProxy(resource, refClass, ref) :
+						deserializer.getProxyFactory().createProxy(resource, refClass, ref);
 			}
 		}
 		return obj;
 	}
 
-	void createProxyReference(EObject eObject, JsonNode root, JsonNode node, EReference reference, Resource resource) {
-		EObject proxy = getOrCreateProxyReference(reference, root, node, resource);
+	void createProxyReference(EObject eObject, EReference reference, String ref, String type, Resource resource) {
+		EObject proxy = getOrCreateProxyReference(eObject, reference, ref, type, resource);
 		if (proxy != null && reference.isMany()) {
 			@SuppressWarnings("unchecked")
 			InternalEList<EObject> values = (InternalEList<EObject>) eObject.eGet(reference);
-			values.add(proxy);
+			// both ends of a bidirectional reference may be in the document, 
+			// the list must be searched to not add the object twice
+			if (deserializer.isBulkLoad() && reference.getEOpposite() == null) {
+				values.addUnique(proxy);
+			} else if (!values.add(proxy) && proxy.eIsProxy() && isShareable(reference)) {
+				// a unique list already holding the shared proxy gets its own proxy
+				values.add(deserializer.getProxyFactory().createProxy(resource, proxy.eClass(), ref));
+			}
 		} else if (proxy != null) {
 			eObject.eSet(reference, proxy);
 		}
+
+		// setting a container moves the object
+		if (proxy != null && index != null && reference.isContainer()) {
+			index.clear();
+		}
+	}
+
+	/**
+	 * Returns true if a proxy can be the value of the reference for several
+	 * objects, setting the reference must not change the proxy.
+	 */
+	private static boolean isShareable(EReference reference) {
+		return !reference.isContainment() && !reference.isContainer() && reference.getEOpposite() == null;
 	}
 
-	EObject findEObject(Resource resource, JsonNode node) {
-		EObject eObject = null;
-		if (node.isObject()) {
-			URI objectURI = getEObjectURI(node.get(EJS_REF_KEYWORD), resource, deserializer.getNamespaces());
-			eObject = resource.getResourceSet().getEObject(objectURI, false);
+	/**
+	 * Returns the object of the reference. Objects of the resource being loaded are
+	 * looked up in the fragment index, other objects in the resource set.
+	 */
+	EObject findEObject(Resource resource, String ref) {
+		URI objectURI = null;
+
+		if (index != null) {
+			if (ref != null && ref.indexOf(':') != -1) {
+				objectURI = getEObjectURI(ref, resource, deserializer.getNamespaces());
+			}
+
+			final String fragment = index.getFragment(ref, objectURI);
+			if (fragment != null) {
+				EObject found = index.getEObject(fragment);
+				if (found != null || index.isComplete(fragment)) {
+					return found;
+				}
+			}
 		}
-		return eObject;
+
+		if (objectURI == null) {
+			objectURI = getEObjectURI(ref, resource, deserializer.getNamespaces());
+		}
+
+		return resource.getResourceSet().getEObject(objectURI, false);
 	}
 }
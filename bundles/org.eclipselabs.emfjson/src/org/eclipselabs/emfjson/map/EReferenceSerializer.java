@@ -14,7 +14,6 @@ import static org.eclipselabs.emfjson.common.Constants.EJS_REF_KEYWORD;
 import static org.eclipselabs.emfjson.common.Constants.EJS_TYPE_KEYWORD;
 import static org.eclipselabs.emfjson.common.ModelUtil.getElementName;
 import static org.eclipselabs.emfjson.common.ModelUtil.isDynamicMapEntryFeature;
-import static org.eclipselabs.emfjson.common.ModelUtil.isMapEntry;
 
 import java.util.Collection;
 import java.util.Map;
@@ -46,38 +45,46 @@ class EReferenceSerializer {
 	}
 
 	void serialize(EObject eObject, ObjectNode node, Resource resource) {
-		for (EReference eReference: eObject.eClass().getEAllReferences()) {
+		final SerializationPlan plan = caller.getPlan(eObject.eClass());
 
-			if (isCandidate(eObject, eReference)) {
+		for (int i = 0; i < plan.references.length; i++) {
 
-				if (isMapEntry(eReference.getEType())) {
+			if (plan.isReferenceCandidate(eObject, i)) {
+				final EReference eReference = plan.references[i];
+
+				switch (plan.referenceKinds[i]) {
+				case SerializationPlan.MAP_ENTRY:
 					serializeMapEntry(eObject, eReference, node);
+					break;
+				case SerializationPlan.CONTAINMENT:
+					serializeContainments(eObject, eReference, plan.referenceKeys[i], plan.getReferenceValue(eObject, i), node, resource);
+					break;
+				default:
+					serializeReferences(node, eObject, eReference, plan.referenceKeys[i], plan.getReferenceValue(eObject, i));
 				}
-				else if (eReference.isContainment()) {
-					serializeContainments(eObject, eReference, node, resource);
-				}
-				else {
-					serializeReferences(node, eObject, eReference);
-				}
-
 			}
 		}
 	}
 
 	void serializeReferences(ObjectNode target, EObject eObject, EReference reference) {
+		final String key = reference.isMany() ? getElementName(reference) : reference.getName();
+
+		serializeReferences(target, eObject, reference, key, eObject.eGet(reference));
+	}
+
+	void serializeReferences(ObjectNode target, EObject eObject, EReference reference, String key, Object value) {
 		if (reference.isMany()) {
 			@SuppressWarnings("unchecked")
-			EList<EObject> values = (EList<EObject>) eObject.eGet(reference);
+			EList<EObject> values = (EList<EObject>) value;
 
 			final ArrayNode arrayNode = target.arrayNode();
-			target.put(getElementName(reference), arrayNode);
+			target.put(key, arrayNode);
 
-			for (EObject value: values) {
-				serializeReferenceValue(eObject, value, reference, arrayNode);
+			for (EObject current: values) {
+				serializeReferenceValue(eObject, current, reference, arrayNode);
 			}
 		} else {
-			EObject value = (EObject) eObject.eGet(reference);
-			target.put(reference.getName(), serializeReferenceValue(eObject, value, reference, target));
+			target.put(key, serializeReferenceValue(eObject, (EObject) value, reference, target));
 		}
 	}
 
@@ -101,31 +108,34 @@ class EReferenceSerializer {
 	}
 
 	void serializeContainments(EObject eObject, EReference reference, ObjectNode node, Resource resource) {
+		serializeContainments(eObject, reference, getElementName(reference), eObject.eGet(reference), node, resource);
+	}
+
+	void serializeContainments(EObject eObject, EReference reference, String key, Object value, ObjectNode node, Resource resource) {
 		if (reference.isMany()) {
 			@SuppressWarnings("unchecked")
-			EList<EObject> values = (EList<EObject>) eObject.eGet(reference);
+			EList<EObject> values = (EList<EObject>) value;
 
 			final ArrayNode arrayNode = node.arrayNode();
-			node.put(getElementName(reference), arrayNode);
+			node.put(key, arrayNode);
 
-			for (EObject value: values) {
+			for (EObject current: values) {
 				ObjectNode target = arrayNode.addObject();
-				serializeContainmentValue(eObject, value, reference, node, target, resource);
+				serializeContainmentValue(eObject, current, reference, node, target, resource);
 			}
 		}
 		else {
-			final EObject value = (EObject) eObject.eGet(reference);
 			ObjectNode target = node.objectNode();
-			node.put(getElementName(reference), target);
+			node.put(key, target);
 
-			serializeContainmentValue(eObject, value, reference, node, target, resource);
+			serializeContainmentValue(eObject, (EObject) value, reference, node, target, resource);
 		}
 	}
 
 	void serializeContainmentValue(EObject eObject, EObject value, EReference reference, ObjectNode parent, ObjectNode target, Resource resource) {
 		if (value == null) return;
 
-		if (value.eIsProxy() || !value.eResource().equals(resource)) {
+		if (value.eIsProxy() || !isWrittenIn(value, resource)) {
 			target.put(EJS_REF_KEYWORD, getReference(value, resource));
 		}
 		else {
@@ -133,6 +143,15 @@ class EReferenceSerializer {
 		}
 	}
 
+	/**
+	 * Returns true if the contained object is written in the document of the resource,
+	 * objects without resource are written in the document of the root holding them.
+	 */
+	boolean isWrittenIn(EObject value, Resource resource) {
+		final Resource valueResource = value.eResource();
+		return valueResource == resource || valueResource == null && caller.detachedRoots;
+	}
+
 	void serializeMapEntry(EObject eObject, EReference reference, ObjectNode node) {
 		final ObjectNode nodeRef = node.objectNode();
 
@@ -158,8 +177,58 @@ class EReferenceSerializer {
 	}
 
 	String getReference(EObject obj, Resource resource) {
-		URI eObjectURI = EcoreUtil.getURI(obj);
-		URI resourceURI = resource.getURI();
+		Resource objResource = obj.eIsProxy() ? null : obj.eResource();
+		String fragment = null;
+
+		if (objResource == null && caller.detachedRoots && !obj.eIsProxy() && resource != null) {
+			fragment = EcoreUtil.getID(obj);
+			if (fragment != null) {
+				objResource = resource;
+			}
+		}
+
+		final URI objResourceURI = objResource == null ? null : objResource.getURI();
+
+		if (objResourceURI == null || objResourceURI.hasFragment()) {
+			return getReference(EcoreUtil.getURI(obj), resource);
+		}
+
+		if (fragment == null) {
+			fragment = caller.getFragments().getURIFragment(obj, objResource);
+		}
+
+		if (caller.serializeNamespaces) {
+			String prefix = objResourceURI.lastSegment();
+			caller.getNamespaces().put(prefix, objResourceURI.toString());
+
+			return prefix + ":" + fragment;
+		} else if (resource != null && objResourceURI.equals(resource.getURI())) {
+			return fragment;
+		} else {
+			return objResourceURI.toString() + "#" + fragment;
+		}
+	}
+
+	/**
+	 * Adds the namespace that {@link #getReference(EObject, Resource)} adds for the 
+	 * object, without computing the fragment of the object.
+	 */
+	void collectNamespace(EObject obj, Resource resource) {
+		Resource objResource = obj.eIsProxy() ? null : obj.eResource();
+
+		if (objResource == null && caller.detachedRoots && !obj.eIsProxy() && resource != null && EcoreUtil.getID(obj) != null) {
+			objResource = resource;
+		}
+
+		final URI objResourceURI = objResource == null ? null : objResource.getURI();
+		final URI nsURI = objResourceURI == null || objResourceURI.hasFragment() ? 
+				EcoreUtil.getURI(obj).trimFragment() : objResourceURI;
+
+		caller.getNamespaces().put(nsURI.lastSegment(), nsURI.toString());
+	}
+
+	private String getReference(URI eObjectURI, Resource resource) {
+		URI resourceURI = resource == null ? null : resource.getURI();
 		
 		if (caller.serializeNamespaces) {
 			URI nsURI = eObjectURI.trimFragment();
@@ -175,17 +244,7 @@ class EReferenceSerializer {
 	}
 	
 	String eClassRef(EClass eClass) {
-		URI eClassURI = EcoreUtil.getURI(eClass);
-
-		if (caller.serializeNamespaces) {
-			String prefix = eClass.getEPackage().getNsPrefix();
-			String nsURI = eClass.getEPackage().getNsURI();
-			caller.getNamespaces().put(prefix, nsURI);
-
-			return prefix + ":" + eClassURI.fragment();
-		} else {
-			return eClassURI.toString();
-		}
+		return caller.eClassRef(eClass);
 	}
 
 }
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import static org.eclipselabs.emfjson.common.ModelUtil.getDynamicMapEntryFeature;
+import static org.eclipselabs.emfjson.common.ModelUtil.getElementName;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipselabs.emfjson.common.ModelUtil;
+
+/**
+ * Maps the JSON keys of an EClass to its features, keys being the names of
+ * the features or the values of their JSON element annotations.
+ *
+ * Lookups return the same features as {@link ModelUtil#getEAttribute(EClass, String)}
+ * and {@link ModelUtil#getEReference(EClass, String)}. Indexes are obtained from
+ * {@link MetamodelCache#getIndex(EClass)}.
+ */
+final class FeatureIndex {
+
+	private final Map<String, EAttribute> attributes = new HashMap<String, EAttribute>();
+	private final Map<String, EReference> references = new HashMap<String, EReference>();
+
+	final EStructuralFeature dynamicMapEntry;
+
+	FeatureIndex(EClass eClass) {
+		final Set<String> keys = new LinkedHashSet<String>();
+		for (EStructuralFeature feature: eClass.getEAllStructuralFeatures()) {
+			keys.add(feature.getName());
+			keys.add(getElementName(feature));
+		}
+
+		for (String key: keys) {
+			EAttribute attribute = ModelUtil.getEAttribute(eClass, key);
+			if (attribute != null) {
+				attributes.put(key, attribute);
+			}
+			EReference reference = ModelUtil.getEReference(eClass, key);
+			if (reference != null) {
+				references.put(key, reference);
+			}
+		}
+
+		dynamicMapEntry = getDynamicMapEntryFeature(eClass);
+	}
+
+	EAttribute getEAttribute(String key) {
+		return attributes.get(key);
+	}
+
+	EReference getEReference(String key) {
+		return references.get(key);
+	}
+
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.impl.BasicEObjectImpl;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.util.InternalEList;
+
+/**
+ * Fragments of the objects referenced during a save, equal to the ones returned
+ * by {@link Resource#getURIFragment(EObject)}.
+ *
+ * Paths are computed once per object and reused by the paths of its contents. The
+ * position of an object in a many-valued containment, or in the contents of the
+ * resource, is found while the positions of all its siblings are recorded, instead
+ * of searching the list for each object.
+ * Resources and objects that compute fragments their own way are asked directly.
+ */
+class FragmentCache {
+
+	private static final MethodOverrides fragments = new MethodOverrides(ResourceImpl.class,
+			"getURIFragment", "getURIFragmentRootSegment");
+
+	private static final MethodOverrides segments = new MethodOverrides(BasicEObjectImpl.class,
+			"eURIFragmentSegment");
+
+	private final Map<EObject, String> paths = new IdentityHashMap<EObject, String>();
+	private final Map<EObject, Integer> positions = new IdentityHashMap<EObject, Integer>();
+	private final Map<EObject, Integer> roots = new IdentityHashMap<EObject, Integer>();
+
+	/**
+	 * Returns the fragment of an object contained in the resource.
+	 */
+	String getURIFragment(EObject eObject, Resource resource) {
+		if (fragments.isOverridden(resource.getClass())) {
+			return resource.getURIFragment(eObject);
+		}
+
+		final String id = EcoreUtil.getID(eObject);
+		if (id != null) {
+			return id;
+		}
+
+		final String path = getPath((InternalEObject) eObject, resource);
+
+		return path == null ? resource.getURIFragment(eObject) : path;
+	}
+
+	/**
+	 * Returns the path of the object, or null if the object is not reached
+	 * from the contents of the resource.
+	 */
+	private String getPath(InternalEObject eObject, Resource resource) {
+		final List<InternalEObject> branch = new ArrayList<InternalEObject>();
+
+		String path = paths.get(eObject);
+		InternalEObject current = eObject;
+
+		while (path == null) {
+			if (current.eDirectResource() == resource) {
+				path = getRootPath(current, resource);
+				paths.put(current, path);
+			} else {
+				final InternalEObject container = current.eInternalContainer();
+				if (container == null) {
+					return null;
+				}
+				branch.add(current);
+				current = container;
+				path = paths.get(current);
+			}
+		}
+
+		for (int i = branch.size() - 1; i >= 0; i--) {
+			final InternalEObject child = branch.get(i);
+
+			path = path + "/" + getSegment(current, child);
+			paths.put(child, path);
+			current = child;
+		}
+
+		return path;
+	}
+
+	private String getRootPath(EObject eObject, Resource resource) {
+		final List<EObject> contents = resource.getContents();
+
+		if (contents.size() <= 1) {
+			return "/";
+		}
+
+		Integer position = roots.get(eObject);
+
+		if (position == null) {
+			int i = 0;
+			for (EObject root: contents) {
+				if (!roots.containsKey(root)) {
+					roots.put(root, i);
+				}
+				i++;
+			}
+			position = roots.get(eObject);
+		}
+
+		return "/" + (position == null ? -1 : position);
+	}
+
+	private String getSegment(InternalEObject container, InternalEObject eObject) {
+		final EStructuralFeature feature = eObject.eContainingFeature();
+
+		if (feature instanceof EReference && feature.isMany() &&
+				((EReference) feature).getEKeys().isEmpty() &&
+				!segments.isOverridden(container.getClass())) {
+
+			return "@" + feature.getName() + "." + getPosition(container, (EReference) feature, eObject);
+		}
+
+		return container.eURIFragmentSegment(feature, eObject);
+	}
+
+	private int getPosition(InternalEObject container, EReference feature, EObject eObject) {
+		Integer position = positions.get(eObject);
+
+		if (position == null) {
+			final Object value = container.eGet(feature, false, true);
+			int i = 0;
+			for (Iterator<?> it = ((InternalEList<?>) value).basicIterator(); it.hasNext(); i++) {
+				final Object sibling = it.next();
+				if (!positions.containsKey(sibling)) {
+					positions.put((EObject) sibling, i);
+				}
+			}
+			position = positions.get(eObject);
+		}
+
+		return position == null ? -1 : position;
+	}
+
+}
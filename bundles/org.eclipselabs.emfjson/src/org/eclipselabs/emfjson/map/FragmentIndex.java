@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.util.InternalEList;
+
+/**
+ * Index of the objects of a resource by fragment path and by ID, used to resolve
+ * references to objects of the resource being loaded without walking its content
+ * for each reference.
+ *
+ * Lookups return the same objects as {@link Resource#getEObject(String)}. Paths are
+ * indexed in their default form, /0/@feature.index/@feature, IDs are indexed in the
+ * order of {@link EcoreUtil#getAllProperContents(java.util.Collection, boolean)},
+ * first object wins. Both indexes are built on first use, and the index is not
+ * used if the resource overrides the way its objects are found. Resources loading 
+ * their {@link DeferredContents} on lookups find objects the default way otherwise.
+ */
+class FragmentIndex {
+
+	private static final MethodOverrides lookups = new MethodOverrides(ResourceImpl.class, DeferredContents.Host.class,
+			"getEObject", "getEObjectByID", "getEObjectForURIFragmentRootSegment");
+
+	private final Resource resource;
+
+	private Boolean enabled;
+	private Map<String, EObject> paths;
+	private Map<String, EObject> ids;
+
+	FragmentIndex(Resource resource) {
+		this.resource = resource;
+	}
+
+	/**
+	 * Returns the fragment of the reference if it points to an object of
+	 * the indexed resource, null otherwise.
+	 */
+	String getFragment(String ref, URI objectURI) {
+		if (ref == null || !isEnabled()) {
+			return null;
+		}
+		if (ref.indexOf(':') == -1) {
+			return ref.startsWith("#") ? ref.substring(1) : ref;
+		}
+		if (objectURI != null && objectURI.hasFragment() && objectURI.trimFragment().equals(resource.getURI())) {
+			return objectURI.fragment();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns true if a null result of {@link #getEObject(String)} means that
+	 * the resource has no object for the fragment.
+	 */
+	boolean isComplete(String fragment) {
+		return !isPath(fragment) && !isQuery(fragment);
+	}
+
+	EObject getEObject(String fragment) {
+		if (isPath(fragment)) {
+			if (paths == null) {
+				paths = indexPaths();
+			}
+			return paths.get(toKey(fragment));
+		} else if (isQuery(fragment)) {
+			return null;
+		} else {
+			if (ids == null) {
+				ids = indexIDs();
+			}
+			return ids.get(fragment);
+		}
+	}
+
+	/**
+	 * Discards indexed objects, must be called when objects have been moved.
+	 */
+	void clear() {
+		paths = null;
+		ids = null;
+	}
+
+	private boolean isEnabled() {
+		if (enabled == null) {
+			enabled = isIndexable(resource);
+		}
+		return enabled;
+	}
+
+	private static boolean isPath(String fragment) {
+		return fragment.length() > 0 && fragment.charAt(0) == '/';
+	}
+
+	private static boolean isQuery(String fragment) {
+		return fragment.length() > 0 && fragment.charAt(fragment.length() - 1) == '?';
+	}
+
+	/**
+	 * Returns the key of a path, the root segment being replaced by its index.
+	 */
+	static String toKey(String fragment) {
+		final int end = fragment.indexOf('/', 1);
+		final String root = end == -1 ? fragment.substring(1) : fragment.substring(1, end);
+		final String rest = end == -1 ? "" : fragment.substring(end);
+
+		return (root.isEmpty() ? "0" : root) + rest;
+	}
+
+	private Map<String, EObject> indexPaths() {
+		final Map<String, EObject> result = new HashMap<String, EObject>();
+		final List<EObject> objects = new ArrayList<EObject>();
+		final List<String> keys = new ArrayList<String>();
+
+		final List<EObject> contents = resource.getContents();
+		for (int i = 0; i < contents.size(); i++) {
+			EObject root = contents.get(i);
+			if (!root.eIsProxy()) {
+				objects.add(root);
+				keys.add(String.valueOf(i));
+			}
+		}
+
+		while (!objects.isEmpty()) {
+			final EObject eObject = objects.remove(objects.size() - 1);
+			final String key = keys.remove(keys.size() - 1);
+			result.put(key, eObject);
+
+			for (EReference containment: eObject.eClass().getEAllContainments()) {
+				if (containment.isDerived()) {
+					continue;
+				}
+
+				final Object value = ((InternalEObject) eObject).eGet(containment, false, true);
+				if (containment.isMany()) {
+					final String prefix = key + "/@" + containment.getName() + ".";
+					int position = 0;
+					for (Iterator<?> it = ((InternalEList<?>) value).basicIterator(); it.hasNext(); position++) {
+						EObject child = (EObject) it.next();
+						if (!child.eIsProxy()) {
+							objects.add(child);
+							keys.add(prefix + position);
+						}
+					}
+				} else if (value != null && !((EObject) value).eIsProxy()) {
+					objects.add((EObject) value);
+					keys.add(key + "/@" + containment.getName());
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private Map<String, EObject> indexIDs() {
+		final Map<String, EObject> result = new HashMap<String, EObject>();
+
+		for (TreeIterator<EObject> it = EcoreUtil.getAllProperContents(resource.getContents(), false); it.hasNext();) {
+			EObject eObject = it.next();
+			String id = EcoreUtil.getID(eObject);
+			if (id != null && !result.containsKey(id)) {
+				result.put(id, eObject);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns true if references to objects of the resource are resolved by the
+	 * resource itself, and if the resource finds objects the default way.
+	 */
+	private static boolean isIndexable(Resource resource) {
+		final ResourceSet resourceSet = resource.getResourceSet();
+
+		if (resourceSet == null || resource.getURI() == null || !(resource instanceof ResourceImpl) ||
+				((ResourceImpl) resource).getIntrinsicIDToEObjectMap() != null) {
+			return false;
+		}
+
+		return !lookups.isOverridden(resource.getClass()) &&
+				resourceSet.getResource(resource.getURI(), false) == resource;
+	}
+
+}
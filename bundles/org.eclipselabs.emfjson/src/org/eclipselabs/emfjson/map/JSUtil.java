@@ -14,11 +14,11 @@ import static org.eclipselabs.emfjson.common.Constants.EJS_REF_KEYWORD;
 import static org.eclipselabs.emfjson.common.Constants.EJS_TYPE_KEYWORD;
 import static org.eclipselabs.emfjson.common.ModelUtil.getEObjectURI;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 
+import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EAttribute;
 import org.eclipse.emf.ecore.EClass;
@@ -27,29 +27,18 @@ import org.eclipse.emf.ecore.EReference;
 import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
-import org.eclipse.emf.ecore.resource.URIConverter;
+import org.eclipse.emf.ecore.util.EcoreUtil;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class JSUtil {
 
+	/**
+	 * Returns the node of the object in its JSON document. The document is read for 
+	 * each call, loads use a {@link DocumentIndex} to read each document once.
+	 */
 	public static JsonNode getNode(Resource resource, URI objectURI, EClass eClass) {
-		URI fileURI = objectURI.trimFragment();
-		ResourceSet resourceSet = resource.getResourceSet();
-		URIConverter uriConverter = resourceSet.getURIConverter();
-
-		String slash = "/";
-		String current = slash;
-		try {
-			InputStream inStream = uriConverter.createInputStream(fileURI);
-			JsonNode root = new ObjectMapper().readTree(inStream);
-			return findNode(root, resourceSet, current, objectURI);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		return null;
+		return new DocumentIndex(resource.getResourceSet()).getNode(objectURI);
 	}
 
 	public static JsonNode findNode(JsonNode node, ResourceSet resourceSet, String fragment, URI objectURI) {
@@ -124,6 +113,14 @@ public class JSUtil {
 	}
 
 	public static EClass findEClass(EClass eReferenceType, JsonNode node, JsonNode root, Resource resource, Map<String, String> namespaces) {
+		return findEClass(eReferenceType, node, root, null, resource, namespaces);
+	}
+
+	/**
+	 * Same as {@link #findEClass(EClass, JsonNode, JsonNode, Resource, Map)}, the nodes
+	 * under root are found in the index if one is given.
+	 */
+	static EClass findEClass(EClass eReferenceType, JsonNode node, JsonNode root, NodeIndex index, Resource resource, Map<String, String> namespaces) {
 		ResourceSet resourceSet = resource.getResourceSet();
 
 		if (eReferenceType.isAbstract()) {
@@ -146,9 +143,15 @@ public class JSUtil {
 					return resourceSet.getEObject(refURI, false).eClass();
 				}
 
-				refNode = findNode(refURI, eReferenceType, root);
+				if (root == null) {
+					refNode = null;
+				} else if (index == null) {
+					refNode = findNode(refURI, eReferenceType, root);
+				} else {
+					refNode = index.findNode(refURI, eReferenceType, root);
+				}
 				if (refNode != null) {
-					return findEClass(eReferenceType, refNode, root, resource, namespaces);
+					return findEClass(eReferenceType, refNode, root, index, resource, namespaces);
 				}
 			}
 		}
@@ -156,7 +159,47 @@ public class JSUtil {
 		return eReferenceType;
 	}
 
-	public static JsonNode findNode(URI nodeURI, EClass eClass, JsonNode root) {
+	/**
+	 * Returns the EClass of the object referenced by ref, same as {@link #findEClass(EClass, JsonNode, JsonNode, Resource, Map)} 
+	 * but from the values of the eClass and $ref keys of a reference. The objects contained by 
+	 * root are searched if the reference cannot be resolved.
+	 */
+	public static EClass findEClass(EClass eReferenceType, String type, String ref, EObject root, Resource resource, Map<String, String> namespaces) {
+		ResourceSet resourceSet = resource.getResourceSet();
+
+		if (eReferenceType.isAbstract()) {
+
+			if (type != null) {
+				final URI typeURI = getEObjectURI(type, eReferenceType.eResource(), namespaces);
+
+				try {
+					return (EClass) resourceSet.getEObject(typeURI, true);
+				} catch (ClassCastException e) {
+					return null;
+				}
+			} else if (ref != null) {
+				URI refURI = getEObjectURI(ref, resource, namespaces);
+				EObject eObject = resourceSet.getEObject(refURI, true);
+
+				if (eObject != null) {
+					return eObject.eClass();
+				}
+
+				EObject found = root == null ? null : findEObject(refURI, eReferenceType, root);
+				if (found != null && eReferenceType.isSuperTypeOf(found.eClass())) {
+					return found.eClass();
+				}
+			}
+		}
+
+		return eReferenceType;
+	}
+
+	/**
+	 * Returns the first object, root or contained by root, whose ID or name 
+	 * is the fragment of the URI. 
+	 */
+	public static EObject findEObject(URI objectURI, EClass eClass, EObject root) {
 		EAttribute eID = eClass.getEIDAttribute();
 		if (eID == null) {
 			final EStructuralFeature featureName = eClass.getEStructuralFeature("name");
@@ -167,10 +210,32 @@ public class JSUtil {
 			}
 		}
 
-		String fragment = nodeURI.fragment().startsWith("//") ? nodeURI.fragment().substring(2) : nodeURI.fragment();
+		String fragment = objectURI.fragment().startsWith("//") ? objectURI.fragment().substring(2) : objectURI.fragment();
+
+		for (TreeIterator<EObject> it = EcoreUtil.getAllContents(Collections.singleton(root)); it.hasNext();) {
+			EObject current = it.next();
+			EStructuralFeature feature = current.eClass().getEStructuralFeature(eID.getName());
+
+			if (feature instanceof EAttribute && current.eIsSet(feature)) {
+				Object value = current.eGet(feature);
+				if (value != null && fragment.equals(value.toString())) {
+					return current;
+				}
+			}
+		}
+		return null;
+	}
+
+	public static JsonNode findNode(URI nodeURI, EClass eClass, JsonNode root) {
+		final String idName = getIDName(eClass);
+		if (idName == null) {
+			return null;
+		}
+
+		String fragment = getIDFragment(nodeURI);
 
-		for (JsonNode node : root.findParents(eID.getName())) {
-			String value = node.get(eID.getName()).asText();
+		for (JsonNode node : root.findParents(idName)) {
+			String value = node.get(idName).asText();
 			if (value.equals(fragment)) {
 				return node;
 			}
@@ -178,4 +243,29 @@ public class JSUtil {
 		return null;
 	}
 
+	/**
+	 * Returns the name of the ID attribute of the EClass, or of its name 
+	 * attribute if it has no ID, null if it has neither.
+	 */
+	static String getIDName(EClass eClass) {
+		EAttribute eID = eClass.getEIDAttribute();
+		if (eID == null) {
+			final EStructuralFeature featureName = eClass.getEStructuralFeature("name");
+			if (featureName != null && featureName instanceof EAttribute) {
+				eID = (EAttribute) featureName;
+			} else {
+				return null;
+			}
+		}
+		return eID.getName();
+	}
+
+	/**
+	 * Returns the fragment of the URI without its leading //, the value 
+	 * an ID or name is compared to.
+	 */
+	static String getIDFragment(URI nodeURI) {
+		return nodeURI.fragment().startsWith("//") ? nodeURI.fragment().substring(2) : nodeURI.fragment();
+	}
+
 }
@@ -47,9 +47,13 @@ class MapDeserializer {
 	}
 
 	EObject deSerializeEntry(String key, JsonNode value) {
+		return deSerializeEntry(key, value.asText());
+	}
+
+	EObject deSerializeEntry(String key, String value) {
 		EObject eObject = EcoreUtil.create(EcorePackage.Literals.ESTRING_TO_STRING_MAP_ENTRY);
 		eObject.eSet(EcorePackage.Literals.ESTRING_TO_STRING_MAP_ENTRY__KEY, key);
-		eObject.eSet(EcorePackage.Literals.ESTRING_TO_STRING_MAP_ENTRY__VALUE, value.asText());
+		eObject.eSet(EcorePackage.Literals.ESTRING_TO_STRING_MAP_ENTRY__VALUE, value);
 
 		return eObject;
 	}
@@ -11,7 +11,6 @@
 package org.eclipselabs.emfjson.map;
 
 import org.eclipse.emf.common.util.EList;
-import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.EcorePackage;
@@ -20,11 +19,12 @@ import org.eclipselabs.emfjson.common.ModelUtil;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 class MapSerializer {
-		
+
 	void serialize(EObject eObject, ObjectNode node) {
-		EClass eClass = eObject.eClass();
-		EStructuralFeature eFeature = ModelUtil.getDynamicMapEntryFeature(eClass);
-	
+		serialize(eObject, ModelUtil.getDynamicMapEntryFeature(eObject.eClass()), node);
+	}
+
+	void serialize(EObject eObject, EStructuralFeature eFeature, ObjectNode node) {
 		if (eFeature != null) {
 			@SuppressWarnings("unchecked")
 			EList<EObject> values = (EList<EObject>) eObject.eGet(eFeature);
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import static java.lang.Boolean.TRUE;
+import static org.eclipselabs.emfjson.EMFJs.ATTACH_AFTER_LOAD;
+import static org.eclipselabs.emfjson.EMFJs.ATTACH_ON_ACCESS;
+import static org.eclipselabs.emfjson.EMFJs.OPTION_BULK_LOAD;
+import static org.eclipselabs.emfjson.EMFJs.OPTION_DEFER_ADAPTERS;
+import static org.eclipselabs.emfjson.EMFJs.OPTION_INDENT_OUTPUT;
+import static org.eclipselabs.emfjson.EMFJs.OPTION_LINE_DELIMITED;
+import static org.eclipselabs.emfjson.EMFJs.OPTION_PROJECTION;
+import static org.eclipselabs.emfjson.EMFJs.OPTION_PROXY_ATTRIBUTES;
+import static org.eclipselabs.emfjson.EMFJs.OPTION_ROOT_ELEMENT;
+import static org.eclipselabs.emfjson.EMFJs.OPTION_SERIALIZE_NAMESPACES;
+import static org.eclipselabs.emfjson.EMFJs.OPTION_SERIALIZE_REF_TYPE;
+import static org.eclipselabs.emfjson.EMFJs.OPTION_SERIALIZE_TYPE;
+import static org.eclipselabs.emfjson.EMFJs.OPTION_SHARE_PROXIES;
+import static org.eclipselabs.emfjson.EMFJs.OPTION_VALUE_CODECS;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.eclipse.emf.ecore.EClass;
+
+/**
+ * Options of a single load or save, resolved from the options map given
+ * to the {@link EObjectMapper}. Instances are immutable.
+ */
+final class MapperOptions {
+
+	static final MapperOptions DEFAULT = new MapperOptions(true, true, false, false, false, false, false, false, false, null, null, ValueCodecs.DEFAULT);
+
+	final boolean serializeTypes;
+	final boolean serializeRefTypes;
+	final boolean serializeNamespaces;
+	final boolean indentOutput;
+	final boolean useProxyAttributes;
+	final boolean shareProxies;
+	final boolean bulkLoad;
+	final boolean deferAdapters;
+	final boolean lineDelimited;
+	final EClass rootClass;
+	final Projection projection;
+	final ValueCodecs valueCodecs;
+
+	private MapperOptions(boolean serializeTypes, boolean serializeRefTypes, boolean serializeNamespaces,
+			boolean indentOutput, boolean useProxyAttributes, boolean shareProxies, boolean bulkLoad, boolean deferAdapters, boolean lineDelimited, EClass rootClass, Projection projection, ValueCodecs valueCodecs) {
+		this.serializeTypes = serializeTypes;
+		this.serializeRefTypes = serializeRefTypes;
+		this.serializeNamespaces = serializeNamespaces;
+		this.indentOutput = indentOutput;
+		this.useProxyAttributes = useProxyAttributes;
+		this.shareProxies = shareProxies;
+		this.bulkLoad = bulkLoad;
+		this.deferAdapters = deferAdapters;
+		this.lineDelimited = lineDelimited;
+		this.rootClass = rootClass;
+		this.projection = projection;
+		this.valueCodecs = valueCodecs;
+	}
+
+	/**
+	 * Returns the options of a load. The root element is taken from the defaults
+	 * if not present in the map.
+	 */
+	static MapperOptions forLoad(Map<?, ?> options, MapperOptions defaults) {
+		if (options == null) {
+			options = Collections.emptyMap();
+		}
+
+		EClass rootClass = defaults.rootClass;
+		Object optionEClass = options.get(OPTION_ROOT_ELEMENT);
+		if (optionEClass instanceof EClass) {
+			rootClass = (EClass) optionEClass;
+		}
+
+		Projection projection = defaults.projection;
+		Object optionProjection = options.get(OPTION_PROJECTION);
+		if (optionProjection instanceof Projection) {
+			projection = (Projection) optionProjection;
+		}
+
+		return new MapperOptions(
+				defaults.serializeTypes,
+				defaults.serializeRefTypes,
+				defaults.serializeNamespaces,
+				defaults.indentOutput,
+				TRUE.equals(options.get(OPTION_PROXY_ATTRIBUTES)),
+				TRUE.equals(options.get(OPTION_SHARE_PROXIES)),
+				TRUE.equals(options.get(OPTION_BULK_LOAD)),
+				isDeferred(options.get(OPTION_DEFER_ADAPTERS)),
+				getBoolean(options, OPTION_LINE_DELIMITED, defaults.lineDelimited),
+				rootClass,
+				projection,
+				getValueCodecs(options));
+	}
+
+	/**
+	 * Returns the options of a save.
+	 */
+	static MapperOptions forSave(Map<?, ?> options, MapperOptions defaults) {
+		if (options == null) {
+			options = Collections.emptyMap();
+		}
+
+		return new MapperOptions(
+				getBoolean(options, OPTION_SERIALIZE_TYPE, true),
+				getBoolean(options, OPTION_SERIALIZE_REF_TYPE, true),
+				getBoolean(options, OPTION_SERIALIZE_NAMESPACES, false),
+				getBoolean(options, OPTION_INDENT_OUTPUT, true),
+				defaults.useProxyAttributes,
+				defaults.shareProxies,
+				defaults.bulkLoad,
+				defaults.deferAdapters,
+				getBoolean(options, OPTION_LINE_DELIMITED, defaults.lineDelimited),
+				defaults.rootClass,
+				defaults.projection,
+				getValueCodecs(options));
+	}
+
+	/**
+	 * Returns a copy of these options in which the option of the given key is replaced.
+	 */
+	MapperOptions with(String key, Object value) {
+		return new MapperOptions(
+				OPTION_SERIALIZE_TYPE.equals(key) ? (Boolean) value : serializeTypes,
+				OPTION_SERIALIZE_REF_TYPE.equals(key) ? (Boolean) value : serializeRefTypes,
+				OPTION_SERIALIZE_NAMESPACES.equals(key) ? (Boolean) value : serializeNamespaces,
+				OPTION_INDENT_OUTPUT.equals(key) ? (Boolean) value : indentOutput,
+				OPTION_PROXY_ATTRIBUTES.equals(key) ? (Boolean) value : useProxyAttributes,
+				OPTION_SHARE_PROXIES.equals(key) ? (Boolean) value : shareProxies,
+				OPTION_BULK_LOAD.equals(key) ? (Boolean) value : bulkLoad,
+				OPTION_DEFER_ADAPTERS.equals(key) ? isDeferred(value) : deferAdapters,
+				OPTION_LINE_DELIMITED.equals(key) ? (Boolean) value : lineDelimited,
+				OPTION_ROOT_ELEMENT.equals(key) ? (EClass) value : rootClass,
+				OPTION_PROJECTION.equals(key) ? (Projection) value : projection,
+				OPTION_VALUE_CODECS.equals(key) ? (ValueCodecs) value : valueCodecs);
+	}
+
+	/**
+	 * Returns true if the value of {@link org.eclipselabs.emfjson.EMFJs#OPTION_DEFER_ADAPTERS}
+	 * asks for adapters to be attached after the load.
+	 */
+	static boolean isDeferred(Object value) {
+		return TRUE.equals(value) || ATTACH_AFTER_LOAD.equals(value) || ATTACH_ON_ACCESS.equals(value);
+	}
+
+	private static boolean getBoolean(Map<?, ?> options, String key, boolean defaultValue) {
+		if (options.containsKey(key)) {
+			try {
+				return (Boolean) options.get(key);
+			} catch (ClassCastException e) {
+				e.printStackTrace();
+			}
+		}
+		return defaultValue;
+	}
+
+	private static ValueCodecs getValueCodecs(Map<?, ?> options) {
+		Object optionCodecs = options.get(OPTION_VALUE_CODECS);
+
+		return optionCodecs instanceof ValueCodecs ? (ValueCodecs) optionCodecs : ValueCodecs.DEFAULT;
+	}
+
+}
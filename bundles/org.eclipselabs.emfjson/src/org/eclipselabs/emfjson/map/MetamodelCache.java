@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.impl.EPackageImpl;
+
+/**
+ * Keeps the data computed from an EClass and used for each of its instances,
+ * such as its {@link SerializationPlan} and its {@link FeatureIndex}.
+ *
+ * The metamodel is not modified, data is kept in a map weakly keyed by EClass,
+ * and held softly since it refers to its EClass. Only the data of generated
+ * EClasses is kept, their metamodel is not expected to change. The data of
+ * dynamic EClasses is computed for each call, serializers and deserializers
+ * keep it for the duration of a save or a load.
+ */
+final class MetamodelCache {
+
+	private static final Map<EClass, SoftReference<Entry>> entries = new WeakHashMap<EClass, SoftReference<Entry>>();
+
+	private MetamodelCache() {}
+
+	static SerializationPlan getPlan(EClass eClass) {
+		if (!isGenerated(eClass)) {
+			return new SerializationPlan(eClass);
+		}
+
+		synchronized (entries) {
+			final Entry entry = getEntry(eClass);
+			if (entry.plan == null) {
+				entry.plan = new SerializationPlan(eClass);
+			}
+			return entry.plan;
+		}
+	}
+
+	static FeatureIndex getIndex(EClass eClass) {
+		if (!isGenerated(eClass)) {
+			return new FeatureIndex(eClass);
+		}
+
+		synchronized (entries) {
+			final Entry entry = getEntry(eClass);
+			if (entry.index == null) {
+				entry.index = new FeatureIndex(eClass);
+			}
+			return entry.index;
+		}
+	}
+
+	/**
+	 * Returns true if the EClass belongs to a generated package, dynamic
+	 * packages are instances of {@link EPackageImpl} itself.
+	 */
+	static boolean isGenerated(EClass eClass) {
+		final EPackage ePackage = eClass.getEPackage();
+		return ePackage != null && ePackage.getClass() != EPackageImpl.class;
+	}
+
+	private static Entry getEntry(EClass eClass) {
+		final SoftReference<Entry> reference = entries.get(eClass);
+		Entry entry = reference == null ? null : reference.get();
+
+		if (entry == null) {
+			entry = new Entry();
+			entries.put(eClass, new SoftReference<Entry>(entry));
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Data cached for an EClass.
+	 */
+	private static class Entry {
+		SerializationPlan plan;
+		FeatureIndex index;
+	}
+
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Tells if classes override some methods of a base class, used to know if
+ * EMF default behavior can be reproduced. Results are cached per class.
+ */
+final class MethodOverrides {
+
+	private final Class<?> base;
+	private final Class<?> exempt;
+	private final List<String> names;
+	private final Map<Class<?>, Boolean> results =
+			Collections.synchronizedMap(new WeakHashMap<Class<?>, Boolean>());
+
+	MethodOverrides(Class<?> base, String... names) {
+		this(base, null, names);
+	}
+
+	/**
+	 * Methods declared by a class directly implementing the exempt interface are
+	 * not counted as overrides, the interface tells that they keep the behavior
+	 * of the base class.
+	 */
+	MethodOverrides(Class<?> base, Class<?> exempt, String... names) {
+		this.base = base;
+		this.exempt = exempt;
+		this.names = Arrays.asList(names);
+	}
+
+	/**
+	 * Returns true if the type, or one of its super types below the base class,
+	 * declares one of the methods. Types not extending the base class are
+	 * considered to override all methods.
+	 */
+	boolean isOverridden(Class<?> type) {
+		Boolean result = results.get(type);
+
+		if (result == null) {
+			result = !base.isAssignableFrom(type);
+
+			for (Class<?> current = type; !result && current != base; current = current.getSuperclass()) {
+				if (exempt != null && Arrays.asList(current.getInterfaces()).contains(exempt)) {
+					continue;
+				}
+				for (Method method: current.getDeclaredMethods()) {
+					if (names.contains(method.getName())) {
+						result = true;
+					}
+				}
+			}
+			results.put(type, result);
+		}
+
+		return result;
+	}
+
+}
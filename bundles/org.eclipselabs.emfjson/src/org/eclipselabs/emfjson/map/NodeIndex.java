@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Nodes of the document being loaded by value of their ID or name key, used to find
+ * the type of references to objects of an abstract type.
+ *
+ * Lookups return the same node as {@link JSUtil#findNode(URI, EClass, JsonNode)}, the
+ * first node under the given root, in the order of {@link JsonNode#findParents(String)}.
+ * The document is walked once per key name, on the first lookup of that name.
+ * Each node records the range of positions of the nodes it contains, so that nodes
+ * under a root are recognized without walking the root again.
+ */
+class NodeIndex {
+
+	private final JsonNode document;
+	private final Map<String, Walk> walks = new HashMap<String, Walk>();
+
+	NodeIndex(JsonNode document) {
+		this.document = document;
+	}
+
+	JsonNode findNode(URI nodeURI, EClass eClass, JsonNode root) {
+		final String idName = JSUtil.getIDName(eClass);
+		if (idName == null) {
+			return null;
+		}
+
+		Walk walk = walks.get(idName);
+		if (walk == null) {
+			walk = new Walk();
+			walk.index(document, idName);
+			walks.put(idName, walk);
+		}
+
+		final int[] range = walk.ranges.get(root);
+		if (range == null) {
+			return JSUtil.findNode(nodeURI, eClass, root);
+		}
+
+		final List<JsonNode> candidates = walk.nodes.get(JSUtil.getIDFragment(nodeURI));
+		if (candidates != null) {
+			for (JsonNode candidate: candidates) {
+				final int position = walk.ranges.get(candidate)[0];
+				if (range[0] <= position && position <= range[1]) {
+					return candidate;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Object nodes of the document by value of one key, and the positions of 
+	 * the object nodes of the document.
+	 */
+	private static class Walk {
+
+		final Map<String, List<JsonNode>> nodes = new HashMap<String, List<JsonNode>>();
+		final Map<JsonNode, int[]> ranges = new IdentityHashMap<JsonNode, int[]>();
+		int counter;
+
+		/**
+		 * Walks the node the same way as {@link JsonNode#findParents(String)}, the value
+		 * of a key named idName is not walked.
+		 */
+		void index(JsonNode node, String idName) {
+			if (node.isObject()) {
+				final int[] range = new int[] { counter++, 0 };
+				ranges.put(node, range);
+
+				for (Iterator<Entry<String, JsonNode>> it = node.fields(); it.hasNext();) {
+					final Entry<String, JsonNode> field = it.next();
+
+					if (idName.equals(field.getKey())) {
+						final String value = field.getValue().asText();
+						List<JsonNode> list = nodes.get(value);
+						if (list == null) {
+							list = new ArrayList<JsonNode>(1);
+							nodes.put(value, list);
+						}
+						list.add(node);
+					} else {
+						index(field.getValue(), idName);
+					}
+				}
+
+				range[1] = counter - 1;
+			} else if (node.isArray()) {
+				for (Iterator<JsonNode> it = node.elements(); it.hasNext();) {
+					index(it.next(), idName);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,423 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.URIConverter;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+/**
+ * Positions of the objects of a JSON document, written next to the document by a save
+ * with the option {@link org.eclipselabs.emfjson.EMFJs#OPTION_SAVE_INDEX}, in a file named
+ * after the document with the extension idx.
+ *
+ * The index gives the offset and the length in bytes of each object written in the document,
+ * by fragment path in its default form, /0/@feature.index/@feature, and by ID. A single object
+ * can then be read without reading the document, see
+ * {@link EObjectMapper#readObject(Resource, String, Map)}. Objects written by the tree
+ * serializer, such as the contents of objects holding a dynamic map, are not indexed.
+ *
+ * The index is only used if the length of the document is the one recorded in the index,
+ * documents changed by other means than a save with the option should have their index deleted.
+ *
+ * @since 0.8.0
+ */
+public final class ObjectIndex extends AdapterImpl {
+
+	private static final int MAGIC = 0x454a5349;
+	private static final int VERSION = 1;
+
+	private URI documentURI;
+	private long documentLength;
+	private Map<String, String> namespaces = Collections.emptyMap();
+
+	private final List<String> types = new ArrayList<String>();
+	private final Map<EClass, Integer> typeIndexes = new HashMap<EClass, Integer>();
+
+	private int size;
+	private int[] parents = new int[16];
+	private int[] typeRefs = new int[16];
+	private long[] offsets = new long[16];
+	private long[] lengths = new long[16];
+	private String[] segments = new String[16];
+	private String[] ids = new String[16];
+
+	private Map<String, Integer> paths;
+	private Map<String, Integer> idEntries;
+
+	ObjectIndex() {
+	}
+
+	/**
+	 * Returns the URI of the index of a document, the URI of the document with the extension idx.
+	 */
+	public static URI getIndexURI(URI documentURI) {
+		return documentURI.appendFileExtension("idx");
+	}
+
+	/**
+	 * Returns the number of indexed objects.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the length in bytes of the indexed document.
+	 */
+	public long getDocumentLength() {
+		return documentLength;
+	}
+
+	/**
+	 * Returns the offset in the document of the object of the fragment, -1 if it is not indexed.
+	 */
+	public long getOffset(String fragment) {
+		final int entry = getEntry(fragment);
+		return entry == -1 ? -1 : offsets[entry];
+	}
+
+	/**
+	 * Returns the length in bytes of the object of the fragment, -1 if it is not indexed.
+	 */
+	public long getLength(String fragment) {
+		final int entry = getEntry(fragment);
+		return entry == -1 ? -1 : lengths[entry];
+	}
+
+	/**
+	 * Writes the index in the output stream, and closes the stream.
+	 */
+	public void write(OutputStream outputStream) throws IOException {
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(documentLength);
+
+			out.writeInt(namespaces.size());
+			for (Map.Entry<String, String> namespace: namespaces.entrySet()) {
+				out.writeUTF(namespace.getKey());
+				out.writeUTF(namespace.getValue());
+			}
+
+			out.writeInt(types.size());
+			for (String type: types) {
+				out.writeUTF(type);
+			}
+
+			out.writeInt(size);
+			for (int i = 0; i < size; i++) {
+				out.writeInt(parents[i]);
+				out.writeUTF(segments[i]);
+				out.writeInt(typeRefs[i]);
+				out.writeLong(offsets[i]);
+				out.writeLong(lengths[i]);
+				out.writeBoolean(ids[i] != null);
+				if (ids[i] != null) {
+					out.writeUTF(ids[i]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads an index from the input stream, and closes the stream.
+	 */
+	public static ObjectIndex read(InputStream inputStream) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not an index of a JSON document");
+			}
+
+			final ObjectIndex index = new ObjectIndex();
+			index.documentLength = in.readLong();
+
+			final int namespaceCount = in.readInt();
+			final Map<String, String> namespaces = new HashMap<String, String>();
+			for (int i = 0; i < namespaceCount; i++) {
+				namespaces.put(in.readUTF(), in.readUTF());
+			}
+			index.namespaces = namespaces;
+
+			final int typeCount = in.readInt();
+			for (int i = 0; i < typeCount; i++) {
+				index.types.add(in.readUTF());
+			}
+
+			final int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				final int parent = in.readInt();
+				final String segment = in.readUTF();
+				final int type = in.readInt();
+				final long offset = in.readLong();
+				final long length = in.readLong();
+				final String id = in.readBoolean() ? in.readUTF() : null;
+
+				final int entry = index.add(parent, segment, type, id, offset);
+				index.lengths[entry] = length;
+			}
+
+			return index;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the index of the document of the resource, null if it has no index or if its index
+	 * is out of date. The index is read once and kept by the resource while the document keeps
+	 * the same length.
+	 */
+	static ObjectIndex get(Resource resource, Map<?, ?> options) {
+		final URI documentURI = resource.getURI();
+		final URIConverter converter = getURIConverter(resource.getResourceSet());
+
+		ObjectIndex index = null;
+		for (Adapter adapter: resource.eAdapters()) {
+			if (adapter instanceof ObjectIndex) {
+				index = (ObjectIndex) adapter;
+			}
+		}
+
+		if (index != null && index.isValid(converter, documentURI)) {
+			return index;
+		} else if (index != null) {
+			resource.eAdapters().remove(index);
+		}
+
+		index = read(converter, documentURI, options);
+		if (index != null) {
+			resource.eAdapters().add(index);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Discards the index kept by the resource, must be called when its document is written.
+	 * Returns true if the resource kept an index.
+	 */
+	public static boolean remove(Resource resource) {
+		for (Adapter adapter: resource.eAdapters()) {
+			if (adapter instanceof ObjectIndex) {
+				resource.eAdapters().remove(adapter);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the index of the document, returns null if it has no index or if its index is out of date.
+	 */
+	static ObjectIndex read(URIConverter converter, URI documentURI, Map<?, ?> options) {
+		final URI indexURI = getIndexURI(documentURI);
+
+		try {
+			if (!converter.exists(indexURI, options)) {
+				return null;
+			}
+
+			final ObjectIndex index = read(converter.createInputStream(indexURI, options));
+			index.documentURI = documentURI;
+
+			return index.isValid(converter, documentURI) ? index : null;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return null;
+	}
+
+	static URIConverter getURIConverter(ResourceSet resourceSet) {
+		return resourceSet == null ? URIConverter.INSTANCE : resourceSet.getURIConverter();
+	}
+
+	private boolean isValid(URIConverter converter, URI documentURI) {
+		final Map<String, ?> attributes = converter.getAttributes(documentURI,
+				Collections.singletonMap(URIConverter.OPTION_REQUESTED_ATTRIBUTES,
+						Collections.singleton(URIConverter.ATTRIBUTE_LENGTH)));
+		final Object length = attributes.get(URIConverter.ATTRIBUTE_LENGTH);
+
+		return length instanceof Long && (Long) length == documentLength;
+	}
+
+	/**
+	 * Reads the bytes of the object of the fragment from the indexed document, returns null if
+	 * the object is not indexed. Documents of file URIs are read at the offset of the object with
+	 * a {@link FileChannel}, other documents are read up to the object.
+	 */
+	byte[] readSpan(URIConverter converter, String fragment, Map<?, ?> options) throws IOException {
+		final int entry = getEntry(fragment);
+		if (entry == -1 || lengths[entry] > Integer.MAX_VALUE) {
+			return null;
+		}
+
+		final byte[] bytes = new byte[(int) lengths[entry]];
+		final URI uri = converter.normalize(documentURI);
+
+		if (uri.isFile()) {
+			final RandomAccessFile file = new RandomAccessFile(uri.toFileString(), "r");
+			try {
+				final FileChannel channel = file.getChannel();
+				final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, offsets[entry] + buffer.position()) < 0) {
+						throw new IOException("Document ends before indexed object");
+					}
+				}
+			} finally {
+				file.close();
+			}
+		} else {
+			final DataInputStream in = new DataInputStream(converter.createInputStream(documentURI, options));
+			try {
+				long remaining = offsets[entry];
+				while (remaining > 0) {
+					final long skipped = in.skip(remaining);
+					if (skipped <= 0) {
+						throw new IOException("Document ends before indexed object");
+					}
+					remaining -= skipped;
+				}
+				in.readFully(bytes);
+			} finally {
+				in.close();
+			}
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Returns the URI of the EClass of the object of the fragment, null if it is not indexed.
+	 */
+	URI getType(String fragment) {
+		final int entry = getEntry(fragment);
+		return entry == -1 ? null : URI.createURI(types.get(typeRefs[entry]));
+	}
+
+	Map<String, String> getNamespaces() {
+		return namespaces;
+	}
+
+	/**
+	 * Adds an object whose first byte is at the offset, contained by the object of
+	 * the parent entry, or a root if parent is -1. Returns the entry of the object.
+	 */
+	int add(int parent, String segment, EObject eObject, long offset) {
+		final EClass eClass = eObject.eClass();
+
+		Integer type = typeIndexes.get(eClass);
+		if (type == null) {
+			type = types.size();
+			types.add(EcoreUtil.getURI(eClass).toString());
+			typeIndexes.put(eClass, type);
+		}
+
+		return add(parent, segment, type, EcoreUtil.getID(eObject), offset);
+	}
+
+	private int add(int parent, String segment, int type, String id, long offset) {
+		if (size == offsets.length) {
+			final int capacity = size * 2;
+			parents = Arrays.copyOf(parents, capacity);
+			typeRefs = Arrays.copyOf(typeRefs, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			segments = Arrays.copyOf(segments, capacity);
+			ids = Arrays.copyOf(ids, capacity);
+		}
+
+		parents[size] = parent;
+		segments[size] = segment;
+		typeRefs[size] = type;
+		ids[size] = id;
+		offsets[size] = offset;
+		lengths[size] = -1;
+
+		return size++;
+	}
+
+	/**
+	 * Ends the object of the entry, the offset is the one following its last byte.
+	 */
+	void end(int entry, long offset) {
+		lengths[entry] = offset - offsets[entry];
+	}
+
+	int getParent(int entry) {
+		return parents[entry];
+	}
+
+	/**
+	 * Sets the location and the namespaces of the document once it has been written.
+	 */
+	void setDocument(URI documentURI, long documentLength, Map<String, String> namespaces) {
+		this.documentURI = documentURI;
+		this.documentLength = documentLength;
+		this.namespaces = new HashMap<String, String>(namespaces);
+	}
+
+	/**
+	 * Returns the entry of a fragment path or ID, -1 if it is not indexed. Paths are
+	 * indexed on first use, the first object in document order wins for IDs.
+	 */
+	private int getEntry(String fragment) {
+		if (paths == null) {
+			paths = new HashMap<String, Integer>();
+			idEntries = new HashMap<String, Integer>();
+
+			final String[] keys = new String[size];
+			for (int i = 0; i < size; i++) {
+				keys[i] = parents[i] == -1 ? segments[i] : keys[parents[i]] + "/" + segments[i];
+				paths.put(keys[i], i);
+
+				if (ids[i] != null && !idEntries.containsKey(ids[i])) {
+					idEntries.put(ids[i], i);
+				}
+			}
+		}
+
+		final Integer entry = fragment.length() > 0 && fragment.charAt(0) == '/' ?
+				paths.get(FragmentIndex.toKey(fragment)) : idEntries.get(fragment);
+
+		return entry == null ? -1 : entry;
+	}
+
+}
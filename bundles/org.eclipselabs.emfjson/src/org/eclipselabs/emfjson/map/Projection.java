@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+/**
+ * Selects the part of a document that is loaded, the rest of the document is
+ * skipped while it is read and no object is created for it.
+ *
+ * <ul>
+ * <li>If classes are included, only objects of these classes or of their subclasses
+ * are loaded, other objects are skipped with their contents.</li>
+ * <li>If features of a class are included, only these features are loaded for the objects
+ * of this class, features of classes without included features are all loaded.</li>
+ * <li>If a depth is set, objects contained deeper than this depth are skipped,
+ * roots are at depth 1.</li>
+ * </ul>
+ *
+ * References to skipped objects are not resolved, they are loaded as proxies.
+ *
+ * A projection is given to a load with the option {@link org.eclipselabs.emfjson.EMFJs#OPTION_PROJECTION}.
+ *
+ * @since 0.8.0
+ */
+public class Projection {
+
+	private final Set<EClass> eClasses = new CopyOnWriteArraySet<EClass>();
+	private final Set<EStructuralFeature> features = new CopyOnWriteArraySet<EStructuralFeature>();
+	private final Map<EClass, Boolean> includedClasses = new ConcurrentHashMap<EClass, Boolean>();
+	private final Map<EClass, Boolean> selectingClasses = new ConcurrentHashMap<EClass, Boolean>();
+	private volatile int depth;
+
+	/**
+	 * Includes the objects of the class and of its subclasses.
+	 */
+	public Projection include(EClass eClass) {
+		eClasses.add(eClass);
+		includedClasses.clear();
+		return this;
+	}
+
+	/**
+	 * Includes the feature, other features of the classes having this
+	 * feature are not loaded unless they are also included.
+	 */
+	public Projection include(EStructuralFeature feature) {
+		features.add(feature);
+		selectingClasses.clear();
+		return this;
+	}
+
+	/**
+	 * Skips the objects contained deeper than the depth, roots are at depth 1.
+	 * A depth of 0 loads objects at any depth.
+	 */
+	public Projection depth(int depth) {
+		this.depth = depth;
+		return this;
+	}
+
+	/**
+	 * Returns true if objects of the class are loaded.
+	 */
+	boolean includes(EClass eClass) {
+		if (eClasses.isEmpty()) {
+			return true;
+		}
+
+		Boolean included = includedClasses.get(eClass);
+		if (included == null) {
+			included = Boolean.FALSE;
+			for (EClass current: eClasses) {
+				if (current.isSuperTypeOf(eClass)) {
+					included = Boolean.TRUE;
+					break;
+				}
+			}
+			includedClasses.put(eClass, included);
+		}
+
+		return included;
+	}
+
+	/**
+	 * Returns true if the feature is loaded for objects of the class.
+	 */
+	boolean includes(EClass eClass, EStructuralFeature feature) {
+		if (features.isEmpty() || features.contains(feature)) {
+			return true;
+		}
+
+		Boolean selecting = selectingClasses.get(eClass);
+		if (selecting == null) {
+			selecting = Boolean.FALSE;
+			for (EStructuralFeature current: eClass.getEAllStructuralFeatures()) {
+				if (features.contains(current)) {
+					selecting = Boolean.TRUE;
+					break;
+				}
+			}
+			selectingClasses.put(eClass, selecting);
+		}
+
+		return !selecting;
+	}
+
+	/**
+	 * Returns true if objects contained at the given depth are loaded.
+	 */
+	boolean includesDepth(int level) {
+		return depth <= 0 || level <= depth;
+	}
+
+}
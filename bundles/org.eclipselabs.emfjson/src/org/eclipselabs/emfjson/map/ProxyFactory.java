@@ -25,21 +25,69 @@ import com.fasterxml.jackson.databind.JsonNode;
 class ProxyFactory {
 
 	private Deserializer deserializer;	
+	private DocumentIndex documents;
+	private ProxyTable proxies;
 
 	ProxyFactory(Deserializer deserializer) {
 		this.deserializer = deserializer;
 	}
 
 	EObject createProxy(Resource resource, EClass eClass, JsonNode node) {
-		final URI objectURI = getEObjectURI(node.get(EJS_REF_KEYWORD), 
+		final JsonNode refNode = node.get(EJS_REF_KEYWORD);
+
+		return createProxy(resource, eClass, refNode == null ? null : refNode.asText());
+	}
+
+	EObject createProxy(Resource resource, EClass eClass, String ref) {
+		final URI objectURI = getEObjectURI(ref, 
+				resource, 
+				deserializer.getNamespaces());
+
+		return createProxy(resource, eClass, objectURI);
+	}
+
+	/**
+	 * Returns the proxy of the reference, the same proxy is returned for all 
+	 * references to the same URI with the same EClass. Shared proxies must only 
+	 * be used as values of non containment references without opposite.
+	 */
+	EObject getProxy(Resource resource, EClass eClass, String ref) {
+		final URI objectURI = getEObjectURI(ref, 
 				resource, 
 				deserializer.getNamespaces());
 
+		if (proxies == null) {
+			proxies = deserializer.shareProxies() ? ProxyTable.get(resource.getResourceSet()) : new ProxyTable();
+		}
+
+		EObject proxy = proxies.get(objectURI, eClass);
+		if (proxy == null) {
+			proxy = createProxy(resource, eClass, objectURI);
+			proxies.put(objectURI, eClass, proxy);
+		}
+
+		return proxy;
+	}
+
+	/**
+	 * Forgets the proxies created so far, unless they are shared by the 
+	 * loads of the resource set.
+	 */
+	void clearProxies() {
+		if (!deserializer.shareProxies()) {
+			proxies = null;
+		}
+	}
+
+	private EObject createProxy(Resource resource, EClass eClass, URI objectURI) {
 		final EObject proxy = EcoreUtil.create(eClass);
 		((InternalEObject) proxy).eSetProxyURI(objectURI);
 
 		if (deserializer.useProxyAttributes()) {
-			JsonNode refNode = JSUtil.getNode(resource, objectURI, eClass);
+			if (documents == null) {
+				documents = new DocumentIndex(resource.getResourceSet(), deserializer.getObjectMapper());
+			}
+			JsonNode refNode = documents.getNode(objectURI);
 
 			if (refNode != null) {
 				deserializer.getEAtttributeDeserializer().deSerialize(proxy, refNode);
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+
+/**
+ * Proxies by URI and EClass, so that all references to the same object
+ * use the same proxy. A table is used for a single load, or shared by the
+ * loads of a {@link ResourceSet} if the option
+ * {@link org.eclipselabs.emfjson.EMFJs#OPTION_SHARE_PROXIES} is set.
+ *
+ * A proxy is only returned while it is still a proxy for the same URI, other
+ * entries are dropped when they are looked up. Proxies are held weakly, the
+ * table does not keep alive proxies that are no longer referenced.
+ */
+final class ProxyTable extends AdapterImpl {
+
+	private final Map<EClass, Map<URI, Entry>> proxies = new HashMap<EClass, Map<URI, Entry>>();
+	private final ReferenceQueue<EObject> cleared = new ReferenceQueue<EObject>();
+
+	ProxyTable() {
+	}
+
+	/**
+	 * Returns the proxy table shared by the loads of the resource set,
+	 * a new table if the resource set is null.
+	 */
+	static ProxyTable get(ResourceSet resourceSet) {
+		if (resourceSet == null) {
+			return new ProxyTable();
+		}
+
+		synchronized (resourceSet) {
+			for (Adapter adapter: resourceSet.eAdapters()) {
+				if (adapter instanceof ProxyTable) {
+					return (ProxyTable) adapter;
+				}
+			}
+
+			final ProxyTable table = new ProxyTable();
+			resourceSet.eAdapters().add(table);
+
+			return table;
+		}
+	}
+
+	synchronized EObject get(URI uri, EClass eClass) {
+		expunge();
+
+		final Map<URI, Entry> values = proxies.get(eClass);
+		final Entry entry = values == null ? null : values.get(uri);
+		final EObject proxy = entry == null ? null : entry.get();
+
+		if (proxy != null && proxy.eIsProxy() && uri.equals(((InternalEObject) proxy).eProxyURI())) {
+			return proxy;
+		}
+
+		if (entry != null) {
+			remove(entry);
+		}
+
+		return null;
+	}
+
+	synchronized void put(URI uri, EClass eClass, EObject proxy) {
+		expunge();
+
+		Map<URI, Entry> values = proxies.get(eClass);
+
+		if (values == null) {
+			values = new HashMap<URI, Entry>();
+			proxies.put(eClass, values);
+		}
+
+		values.put(uri, new Entry(uri, eClass, proxy, cleared));
+	}
+
+	/**
+	 * Drops the entries of the proxies that have been garbage collected.
+	 */
+	private void expunge() {
+		Reference<? extends EObject> reference;
+		while ((reference = cleared.poll()) != null) {
+			remove((Entry) reference);
+		}
+	}
+
+	private void remove(Entry entry) {
+		final Map<URI, Entry> values = proxies.get(entry.eClass);
+
+		if (values != null && values.get(entry.uri) == entry) {
+			values.remove(entry.uri);
+			if (values.isEmpty()) {
+				proxies.remove(entry.eClass);
+			}
+		}
+	}
+
+	/**
+	 * Weak reference to a proxy, with the keys of its entry.
+	 */
+	private static final class Entry extends WeakReference<EObject> {
+
+		final URI uri;
+		final EClass eClass;
+
+		Entry(URI uri, EClass eClass, EObject proxy, ReferenceQueue<EObject> queue) {
+			super(proxy, queue);
+			this.uri = uri;
+			this.eClass = eClass;
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+/**
+ * Conditions on the objects of a document, evaluated while the document is
+ * scanned by {@link EObjectMapper#find(Query, org.eclipse.emf.ecore.resource.Resource, java.util.Map)}
+ * without creating the objects. An object matches the query if it satisfies
+ * all its conditions.
+ *
+ * Attribute values are read with the codecs of the scan, and compared to the
+ * value of the condition with {@link Object#equals(Object)}, or with
+ * {@link Comparable#compareTo(Object)} for ordering operators. A many valued
+ * attribute satisfies a condition if one of its values does.
+ *
+ * @since 0.8.0
+ */
+public class Query {
+
+	/**
+	 * Operators comparing the value of an attribute to the value of a condition.
+	 */
+	public enum Operator {
+		EQUAL, NOT_EQUAL, LESS, LESS_OR_EQUAL, GREATER, GREATER_OR_EQUAL
+	}
+
+	private EClass type;
+	private boolean exactType;
+	private final List<EStructuralFeature> present = new ArrayList<EStructuralFeature>();
+	private final List<EAttribute> attributes = new ArrayList<EAttribute>();
+	private final List<Operator> operators = new ArrayList<Operator>();
+	private final List<Object> values = new ArrayList<Object>();
+
+	/**
+	 * Matches objects of the class or of its subclasses.
+	 */
+	public Query ofType(EClass eClass) {
+		this.type = eClass;
+		this.exactType = false;
+		return this;
+	}
+
+	/**
+	 * Matches objects of the class, objects of its subclasses do not match.
+	 */
+	public Query ofExactType(EClass eClass) {
+		this.type = eClass;
+		this.exactType = true;
+		return this;
+	}
+
+	/**
+	 * Matches objects having a value for the feature in the document.
+	 */
+	public Query has(EStructuralFeature feature) {
+		present.add(feature);
+		return this;
+	}
+
+	/**
+	 * Matches objects whose value of the attribute equals the value.
+	 */
+	public Query where(EAttribute attribute, Object value) {
+		return where(attribute, Operator.EQUAL, value);
+	}
+
+	/**
+	 * Matches objects whose value of the attribute compares to the value with the operator.
+	 */
+	public Query where(EAttribute attribute, Operator operator, Object value) {
+		attributes.add(attribute);
+		operators.add(operator);
+		values.add(value);
+		return this;
+	}
+
+	boolean matchesType(EClass eClass) {
+		if (type == null) {
+			return true;
+		}
+		return exactType ? type == eClass : type.isSuperTypeOf(eClass);
+	}
+
+	List<EStructuralFeature> getPresentFeatures() {
+		return present;
+	}
+
+	List<EAttribute> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Returns true if the value read for the attribute of the condition
+	 * at the index satisfies the condition.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	boolean satisfies(int condition, Object value) {
+		final Object expected = values.get(condition);
+
+		switch (operators.get(condition)) {
+		case EQUAL:
+			return expected == null ? value == null : expected.equals(value);
+		case NOT_EQUAL:
+			return expected == null ? value != null : !expected.equals(value);
+		default:
+			if (!(value instanceof Comparable) || expected == null) {
+				return false;
+			}
+
+			final int comparison;
+			try {
+				comparison = ((Comparable) value).compareTo(expected);
+			} catch (ClassCastException e) {
+				return false;
+			}
+
+			switch (operators.get(condition)) {
+			case LESS:
+				return comparison < 0;
+			case LESS_OR_EQUAL:
+				return comparison <= 0;
+			case GREATER:
+				return comparison > 0;
+			default:
+				return comparison >= 0;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+
+/**
+ * Append only table of the non containment references read during a load.
+ *
+ * Each entry keeps the owner of the reference, the feature ID of the reference
+ * in the owner's EClass, the value of the $ref key and the value of the eClass key
+ * if any. Entries are stored in parallel arrays, and are resolved by the
+ * {@link EReferenceResolver} once all objects of the document have been created.
+ */
+class ReferenceTable {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private EObject[] owners = new EObject[INITIAL_CAPACITY];
+	private int[] features = new int[INITIAL_CAPACITY];
+	private String[] refs = new String[INITIAL_CAPACITY];
+	private String[] types = new String[INITIAL_CAPACITY];
+	private int size = 0;
+
+	void add(EObject owner, EReference reference, String ref, String type) {
+		if (size == owners.length) {
+			grow();
+		}
+
+		owners[size] = owner;
+		features[size] = owner.eClass().getFeatureID(reference);
+		refs[size] = ref;
+		types[size] = type;
+		size++;
+	}
+
+	int size() {
+		return size;
+	}
+
+	EObject getOwner(int index) {
+		return owners[index];
+	}
+
+	EReference getReference(int index) {
+		return (EReference) owners[index].eClass().getEStructuralFeature(features[index]);
+	}
+
+	String getRef(int index) {
+		return refs[index];
+	}
+
+	String getType(int index) {
+		return types[index];
+	}
+
+	/**
+	 * Removes the entries added after the table had the given size.
+	 */
+	void truncate(int newSize) {
+		for (int i = newSize; i < size; i++) {
+			owners[i] = null;
+			refs[i] = null;
+			types[i] = null;
+		}
+		size = newSize;
+	}
+
+	void clear() {
+		owners = new EObject[INITIAL_CAPACITY];
+		features = new int[INITIAL_CAPACITY];
+		refs = new String[INITIAL_CAPACITY];
+		types = new String[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	private void grow() {
+		final int capacity = owners.length * 2;
+
+		EObject[] newOwners = new EObject[capacity];
+		System.arraycopy(owners, 0, newOwners, 0, size);
+		owners = newOwners;
+
+		int[] newFeatures = new int[capacity];
+		System.arraycopy(features, 0, newFeatures, 0, size);
+		features = newFeatures;
+
+		String[] newRefs = new String[capacity];
+		System.arraycopy(refs, 0, newRefs, 0, size);
+		refs = newRefs;
+
+		String[] newTypes = new String[capacity];
+		System.arraycopy(types, 0, newTypes, 0, size);
+		types = newTypes;
+	}
+
+}
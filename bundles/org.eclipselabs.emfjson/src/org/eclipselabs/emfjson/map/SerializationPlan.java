@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import static org.eclipselabs.emfjson.common.ModelUtil.getDynamicMapEntryFeature;
+import static org.eclipselabs.emfjson.common.ModelUtil.getElementName;
+import static org.eclipselabs.emfjson.common.ModelUtil.isDynamicMapEntryFeature;
+import static org.eclipselabs.emfjson.common.ModelUtil.isMapEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EEnum;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.util.FeatureMapUtil;
+
+/**
+ * Features of an EClass that can be serialized, in the order they are written,
+ * with their feature ID, their JSON key and the way they are written.
+ *
+ * Plans are obtained from {@link MetamodelCache#getPlan(EClass)}.
+ */
+final class SerializationPlan {
+
+	static final int FEATURE_MAP = 0;
+	static final int MANY_VALUES = 1;
+	static final int SINGLE_VALUE = 2;
+
+	static final int MAP_ENTRY = 0;
+	static final int CONTAINMENT = 1;
+	static final int NON_CONTAINMENT = 2;
+
+	final EAttribute[] attributes;
+	final int[] attributeIDs;
+	final int[] attributeKinds;
+	final String[] attributeKeys;
+	final boolean[] enumAttributes;
+
+	final EReference[] references;
+	final int[] referenceIDs;
+	final int[] referenceKinds;
+	final String[] referenceKeys;
+
+	final EStructuralFeature dynamicMapEntry;
+
+	SerializationPlan(EClass eClass) {
+		final List<EAttribute> eAttributes = new ArrayList<EAttribute>();
+		for (EAttribute eAttribute: eClass.getEAllAttributes()) {
+			if (!eAttribute.isDerived() && !eAttribute.isTransient() && !eAttribute.isUnsettable()) {
+				eAttributes.add(eAttribute);
+			}
+		}
+
+		attributes = eAttributes.toArray(new EAttribute[eAttributes.size()]);
+		attributeIDs = new int[attributes.length];
+		attributeKinds = new int[attributes.length];
+		attributeKeys = new String[attributes.length];
+		enumAttributes = new boolean[attributes.length];
+
+		for (int i = 0; i < attributes.length; i++) {
+			final EAttribute eAttribute = attributes[i];
+
+			attributeIDs[i] = eClass.getFeatureID(eAttribute);
+			attributeKeys[i] = getElementName(eAttribute);
+			enumAttributes[i] = eAttribute.getEType() instanceof EEnum;
+
+			if (FeatureMapUtil.isFeatureMap(eAttribute)) {
+				attributeKinds[i] = FEATURE_MAP;
+			} else if (eAttribute.isMany()) {
+				attributeKinds[i] = MANY_VALUES;
+			} else {
+				attributeKinds[i] = SINGLE_VALUE;
+			}
+		}
+
+		final List<EReference> eReferences = new ArrayList<EReference>();
+		for (EReference eReference: eClass.getEAllReferences()) {
+			if (!eReference.isTransient() && !isDynamicMapEntryFeature(eReference)) {
+				eReferences.add(eReference);
+			}
+		}
+
+		references = eReferences.toArray(new EReference[eReferences.size()]);
+		referenceIDs = new int[references.length];
+		referenceKinds = new int[references.length];
+		referenceKeys = new String[references.length];
+
+		for (int i = 0; i < references.length; i++) {
+			final EReference eReference = references[i];
+
+			referenceIDs[i] = eClass.getFeatureID(eReference);
+
+			if (isMapEntry(eReference.getEType())) {
+				referenceKinds[i] = MAP_ENTRY;
+				referenceKeys[i] = eReference.getName();
+			} else if (eReference.isContainment()) {
+				referenceKinds[i] = CONTAINMENT;
+				referenceKeys[i] = getElementName(eReference);
+			} else {
+				referenceKinds[i] = NON_CONTAINMENT;
+				// single references are written with their name.
+				referenceKeys[i] = eReference.isMany() ? getElementName(eReference) : eReference.getName();
+			}
+		}
+
+		dynamicMapEntry = getDynamicMapEntryFeature(eClass);
+	}
+
+	/**
+	 * Returns true if the attribute at the given index should be written for this object.
+	 */
+	boolean isAttributeCandidate(EObject eObject, int index) {
+		return enumAttributes[index] || ((InternalEObject) eObject).eIsSet(attributeIDs[index]);
+	}
+
+	/**
+	 * Returns true if the reference at the given index should be written for this object.
+	 */
+	boolean isReferenceCandidate(EObject eObject, int index) {
+		return ((InternalEObject) eObject).eIsSet(referenceIDs[index]);
+	}
+
+	Object getAttributeValue(EObject eObject, int index) {
+		return ((InternalEObject) eObject).eGet(attributeIDs[index], true, true);
+	}
+
+	Object getReferenceValue(EObject eObject, int index) {
+		return ((InternalEObject) eObject).eGet(referenceIDs[index], true, true);
+	}
+
+}
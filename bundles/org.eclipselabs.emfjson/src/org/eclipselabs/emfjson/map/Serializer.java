@@ -38,14 +38,30 @@ class Serializer {
 	boolean serializeRefTypes = true;
 	boolean serializeNamespaces = false;
 
+	/**
+	 * True if the roots being written are not contained by a resource, objects
+	 * without resource are then objects of the document and referenced by ID.
+	 */
+	boolean detachedRoots = false;
+
 	private final EAttributeSerializer eAttributeSerializer;
 	private final EReferenceSerializer eReferenceSerializer;
 	private final MapSerializer mapSerializer;
 	private final NamespaceSerializer nsSerializer;
 
-	final private Map<String, String> namespaces = new HashMap<String, String>();
+	final private Map<String, String> namespaces;
+	final private Map<EClass, SerializationPlan> plans = new HashMap<EClass, SerializationPlan>();
+	final private Map<EClass, String> tags = new HashMap<EClass, String>();
+	final private FragmentCache fragments = new FragmentCache();
+	private TypeTags typeTags;
+	private ValueCodecs valueCodecs = ValueCodecs.DEFAULT;
 
 	Serializer() {
+		this(new HashMap<String, String>());
+	}
+
+	Serializer(Map<String, String> namespaces) {
+		this.namespaces = namespaces;
 		this.eAttributeSerializer = new EAttributeSerializer(this);
 		this.eReferenceSerializer = new EReferenceSerializer(this);
 		this.mapSerializer = new MapSerializer();
@@ -54,6 +70,7 @@ class Serializer {
 
 	JsonNode to(Resource resource, ObjectMapper mapper) {
 		final EList<EObject> contents = resource.getContents();
+		useTypeTags(resource);
 		
 		if (contents.size() == 1) {
 			ObjectNode result = mapper.createObjectNode();
@@ -91,6 +108,7 @@ class Serializer {
 	}
 
 	ObjectNode to(EObject eObject, Resource resource, ObjectMapper mapper) {
+		useTypeTags(resource);
 		return to(eObject, resource, mapper.createObjectNode());
 	}
 
@@ -101,7 +119,7 @@ class Serializer {
 
 		eAttributeSerializer.serialize(eObject, target);
 		eReferenceSerializer.serialize(eObject, target, resource);
-		mapSerializer.serialize(eObject, target);
+		mapSerializer.serialize(eObject, getPlan(eObject.eClass()).dynamicMapEntry, target);
 
 		return target;
 	}
@@ -116,23 +134,79 @@ class Serializer {
 
 	void setSerializeNamespaces(boolean serializeNamespaces) {
 		this.serializeNamespaces = serializeNamespaces;
+		this.tags.clear();
 	}
 	
+	void setValueCodecs(ValueCodecs valueCodecs) {
+		this.valueCodecs = valueCodecs;
+	}
+
+	void setDetachedRoots(boolean detachedRoots) {
+		this.detachedRoots = detachedRoots;
+	}
+
+	ValueCodecs getValueCodecs() {
+		return valueCodecs;
+	}
+
 	Map<String, String> getNamespaces() {
 		return namespaces;
 	}
 
+	/**
+	 * Returns the fragments of the objects referenced during this save.
+	 */
+	FragmentCache getFragments() {
+		return fragments;
+	}
+
+	/**
+	 * Returns the plan of the EClass, plans are kept by the serializer 
+	 * to avoid looking for them in the {@link MetamodelCache} for each object.
+	 */
+	SerializationPlan getPlan(EClass eClass) {
+		SerializationPlan plan = plans.get(eClass);
+		if (plan == null) {
+			plan = MetamodelCache.getPlan(eClass);
+			plans.put(eClass, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Uses the type tags of the resource set of the resource.
+	 */
+	void useTypeTags(Resource resource) {
+		if (typeTags == null && resource != null) {
+			typeTags = TypeTags.get(resource.getResourceSet());
+		}
+	}
+
+	/**
+	 * Returns the type tag of the EClass, tags are computed once per EClass.
+	 */
 	String eClassRef(EClass eClass) {
-		URI eClassURI = EcoreUtil.getURI(eClass);
+		String tag = tags.get(eClass);
 
 		if (serializeNamespaces) {
 			String prefix = eClass.getEPackage().getNsPrefix();
 			String nsURI = eClass.getEPackage().getNsURI();
 			getNamespaces().put(prefix, nsURI);
-			return prefix + ":" + eClassURI.fragment();
-		} else {
-			return eClassURI.toString();
+
+			if (tag == null) {
+				tag = prefix + ":" + getURI(eClass).fragment();
+				tags.put(eClass, tag);
+			}
+		} else if (tag == null) {
+			tag = getURI(eClass).toString();
+			tags.put(eClass, tag);
 		}
+
+		return tag;
+	}
+
+	private URI getURI(EClass eClass) {
+		return typeTags == null ? EcoreUtil.getURI(eClass) : typeTags.getURI(eClass);
 	}
 
 	public EAttributeSerializer getAttributeSerializer() {
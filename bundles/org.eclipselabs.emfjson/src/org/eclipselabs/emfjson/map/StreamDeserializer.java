@@ -0,0 +1,535 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import static org.eclipselabs.emfjson.common.Constants.EJS_NS_KEYWORD;
+import static org.eclipselabs.emfjson.common.Constants.EJS_REF_KEYWORD;
+import static org.eclipselabs.emfjson.common.Constants.EJS_TYPE_KEYWORD;
+import static org.eclipselabs.emfjson.common.ModelUtil.isMapEntry;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Creates EObjects while reading the tokens of a {@link JsonParser},
+ * without building a {@link JsonNode} tree for the whole document.
+ *
+ * Objects are created as soon as their type is known. If the eClass
+ * key is not the first key of an object, the keys read before it are
+ * buffered and replayed once the object is created.
+ *
+ * Only the $ref and eClass values of non containment references are kept,
+ * in the {@link ReferenceTable} of the deserializer, they are resolved by
+ * {@link Deserializer#resolve(Resource)} once the whole document is read.
+ */
+class StreamDeserializer {
+
+	private final Deserializer deserializer;
+	private final ObjectMapper mapper;
+	private final MapDeserializer mapDeserializer = new MapDeserializer();
+	private final Projection projection;
+	private final DeferredContents deferred;
+
+	/**
+	 * Containment level of the object being read, roots are at level 1.
+	 */
+	private int level = 1;
+
+	/**
+	 * Offset in the document of the first byte read by the parser.
+	 */
+	private long baseOffset;
+
+	StreamDeserializer(Deserializer deserializer, ObjectMapper mapper) {
+		this.deserializer = deserializer;
+		this.mapper = mapper;
+		this.projection = deserializer.getProjection();
+		this.deferred = deserializer.getDeferredContents();
+	}
+
+	void setBaseOffset(long baseOffset) {
+		this.baseOffset = baseOffset;
+	}
+
+	/**
+	 * Reads the next value of the parser, returns an EObject if the
+	 * value is a JSON object, a list of EObjects if it is an array,
+	 * null otherwise.
+	 */
+	Object from(JsonParser parser, EClass rootClass, Resource resource) throws IOException {
+		final JsonToken token = parser.nextToken();
+
+		if (token == JsonToken.START_ARRAY) {
+			final EList<EObject> returnList = new BasicEList<EObject>();
+
+			JsonToken current;
+			while ((current = parser.nextToken()) != null && current != JsonToken.END_ARRAY) {
+				if (current == JsonToken.START_OBJECT) {
+					EObject eObject = readObject(parser, rootClass, null, resource);
+					if (eObject != null) {
+						returnList.add(eObject);
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+
+			return returnList;
+		} else if (token == JsonToken.START_OBJECT) {
+			return readObject(parser, rootClass, null, resource);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Reads the root object starting at the current token of the parser, 
+	 * returns null if the object has no type.
+	 */
+	EObject readRoot(JsonParser parser, EClass rootClass, Resource resource) throws IOException {
+		return readObject(parser, rootClass, null, resource);
+	}
+
+	/**
+	 * Reads the containment array starting at the next token of the parser, and returns
+	 * its elements. The given number of elements, read by a previous load, are skipped.
+	 */
+	EList<EObject> readElements(JsonParser parser, EReference reference, int skip, Resource resource) throws IOException {
+		final EList<EObject> values = new BasicEList<EObject>();
+
+		if (parser.nextToken() == JsonToken.START_ARRAY) {
+			int index = 0;
+			while (parser.nextToken() != JsonToken.END_ARRAY && parser.getCurrentToken() != null) {
+				if (index++ < skip) {
+					parser.skipChildren();
+				} else {
+					EObject contained = createContainedObject(reference, parser, resource);
+					if (contained != null) {
+						values.add(contained);
+					}
+				}
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * Reads the object starting at the current token of the parser.
+	 *
+	 * If containment is null, the object is a root object, its type is eClass
+	 * if not null, or is given by its eClass key. Otherwise the object is the
+	 * value of the containment and may be a proxy.
+	 */
+	private EObject readObject(JsonParser parser, EClass eClass, EReference containment, Resource resource) throws IOException {
+		if (containment != null) {
+			final EClass referenceType = containment.getEReferenceType();
+			eClass = referenceType.isAbstract() ? null : referenceType;
+		}
+
+		TokenBuffer buffer = null;
+		EObject eObject = null;
+		String type = null;
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String key = parser.getCurrentName();
+			parser.nextToken();
+
+			if (EJS_NS_KEYWORD.equals(key) && parser.getCurrentToken() == JsonToken.START_OBJECT) {
+				readNamespaces(parser);
+			} else if (eObject != null) {
+				readField(eObject, key, parser, resource);
+			} else if (containment != null && EJS_REF_KEYWORD.equals(key)) {
+				return readProxy(parser, buffer, key, containment, resource);
+			} else if (containment != null && EJS_TYPE_KEYWORD.equals(key)) {
+				// the value may still be a proxy, the type is resolved with the next key
+				type = asText(parser);
+				buffer = bufferField(buffer, key, parser);
+			} else if (eClass == null && EJS_TYPE_KEYWORD.equals(key)) {
+				final String rootType = asText(parser);
+
+				eClass = findType(rootType, containment, resource);
+				if (eClass == null || !includes(eClass)) {
+					skipFields(parser);
+					return null;
+				}
+
+				eObject = deserializer.create(eClass);
+				replay(eObject, buffer, resource);
+				readTypeField(eObject, rootType);
+			} else if (eClass != null || type != null) {
+				if (eClass == null) {
+					eClass = findType(type, containment, resource);
+				}
+				if (eClass == null || !includes(eClass)) {
+					parser.skipChildren();
+					skipFields(parser);
+					return null;
+				}
+				eObject = deserializer.create(eClass);
+				replay(eObject, buffer, resource);
+				readField(eObject, key, parser, resource);
+			} else {
+				buffer = bufferField(buffer, key, parser);
+			}
+		}
+
+		if (eObject == null) {
+			if (eClass == null && type != null) {
+				eClass = findType(type, containment, resource);
+				if (eClass == null) {
+					return null;
+				}
+			}
+			if (eClass == null && containment != null) {
+				eClass = containment.getEReferenceType();
+			}
+			if (eClass != null && includes(eClass)) {
+				eObject = deserializer.create(eClass);
+				replay(eObject, buffer, resource);
+			}
+		}
+
+		return eObject;
+	}
+
+	private boolean includes(EClass eClass) {
+		return projection == null || projection.includes(eClass);
+	}
+
+	private TokenBuffer bufferField(TokenBuffer buffer, String key, JsonParser parser) throws IOException {
+		if (buffer == null) {
+			buffer = new TokenBuffer(mapper, false);
+			buffer.writeStartObject();
+		}
+		buffer.writeFieldName(key);
+		buffer.copyCurrentStructure(parser);
+
+		return buffer;
+	}
+
+	/**
+	 * Reads the keys that have been buffered before the type of the
+	 * object was known.
+	 */
+	private void replay(EObject eObject, TokenBuffer buffer, Resource resource) throws IOException {
+		if (buffer == null)
+			return;
+
+		buffer.writeEndObject();
+
+		final JsonParser bufferParser = buffer.asParser();
+		bufferParser.nextToken();
+
+		while (bufferParser.nextToken() == JsonToken.FIELD_NAME) {
+			final String key = bufferParser.getCurrentName();
+			bufferParser.nextToken();
+			readField(eObject, key, bufferParser, resource);
+		}
+		bufferParser.close();
+	}
+
+	/**
+	 * Reads the value of a key, the parser being positioned on the value.
+	 */
+	private void readField(EObject eObject, String key, JsonParser parser, Resource resource) throws IOException {
+		final FeatureIndex index = deserializer.getIndex(eObject.eClass());
+		final JsonToken token = parser.getCurrentToken();
+
+		if (token != JsonToken.START_OBJECT) {
+			final EAttribute attribute = index.getEAttribute(key);
+
+			// we allow deserialization of derived feature to
+			// populate feature maps.
+			if (attribute != null) {
+				if (projection != null && !projection.includes(eObject.eClass(), attribute)) {
+					parser.skipChildren();
+				} else if (token == JsonToken.START_ARRAY) {
+					while (parser.nextToken() != JsonToken.END_ARRAY && parser.getCurrentToken() != null) {
+						deserializer.getEAtttributeDeserializer().deSerializeValue(eObject, attribute, parser);
+					}
+				} else {
+					deserializer.getEAtttributeDeserializer().deSerializeValue(eObject, attribute, parser);
+				}
+				return;
+			}
+
+			final EStructuralFeature dynamicMapEntry = index.dynamicMapEntry;
+			if (dynamicMapEntry != null) {
+				// arrays are kept for the reference, same as JsonNode.asText()
+				final String value = token == JsonToken.START_ARRAY ? "" : asText(parser);
+
+				@SuppressWarnings("unchecked")
+				EList<EObject> values = (EList<EObject>) eObject.eGet(dynamicMapEntry);
+				values.add(mapDeserializer.deSerializeEntry(key, value));
+
+				if (token != JsonToken.START_ARRAY)
+					return;
+			}
+		}
+
+		final EReference reference = index.getEReference(key);
+
+		if (reference == null || projection != null && !projection.includes(eObject.eClass(), reference)) {
+			parser.skipChildren();
+		} else if (reference.isContainment()) {
+			if (isMapEntry(reference.getEType()) && token == JsonToken.START_OBJECT) {
+				JsonNode value = mapper.readTree(parser);
+				mapDeserializer.deSerializeMapEntry(eObject, reference, value);
+			} else {
+				readContainment(eObject, reference, parser, resource);
+			}
+		} else if (token == JsonToken.START_ARRAY) {
+			while (parser.nextToken() != JsonToken.END_ARRAY && parser.getCurrentToken() != null) {
+				readReference(eObject, reference, parser);
+			}
+		} else {
+			readReference(eObject, reference, parser);
+		}
+	}
+
+	/**
+	 * Adds the non containment reference to the references resolved 
+	 * once the whole document has been read.
+	 */
+	private void readReference(EObject eObject, EReference reference, JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return;
+		}
+
+		String ref = null;
+		String type = null;
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String key = parser.getCurrentName();
+			parser.nextToken();
+
+			if (EJS_REF_KEYWORD.equals(key)) {
+				ref = asText(parser);
+			} else if (EJS_TYPE_KEYWORD.equals(key)) {
+				type = asText(parser);
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		if (ref != null) {
+			deserializer.getReferences().add(eObject, reference, ref, type);
+		}
+	}
+
+	/**
+	 * The eClass key has already been consumed to create the object, only the
+	 * dynamic map of the object may be interested by it.
+	 */
+	private void readTypeField(EObject eObject, String type) {
+		final EStructuralFeature dynamicMapEntry = deserializer.getIndex(eObject.eClass()).dynamicMapEntry;
+
+		if (dynamicMapEntry != null) {
+			@SuppressWarnings("unchecked")
+			EList<EObject> values = (EList<EObject>) eObject.eGet(dynamicMapEntry);
+			values.add(mapDeserializer.deSerializeEntry(EJS_TYPE_KEYWORD, type));
+		}
+	}
+
+	private void readContainment(EObject eObject, EReference reference, JsonParser parser, Resource resource) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+			final long offset = deferred != null && reference.isMany() ? getArrayOffset(parser) : -1;
+			boolean first = true;
+			int read = 0;
+
+			while (parser.nextToken() != JsonToken.END_ARRAY && parser.getCurrentToken() != null) {
+				if (offset >= 0 && read == deferred.getThreshold()) {
+					defer(eObject, reference, parser, offset, read);
+					return;
+				} else if (reference.isMany()) {
+					read++;
+					EObject contained = createContainedObject(reference, parser, resource);
+					if (contained != null) {
+						@SuppressWarnings("unchecked")
+						EList<EObject> values = (EList<EObject>) eObject.eGet(reference);
+						deserializer.addContained(values, contained);
+					}
+				} else if (first) {
+					EObject contained = createContainedObject(reference, parser, resource);
+					if (contained != null)
+						eObject.eSet(reference, contained);
+				} else {
+					parser.skipChildren();
+				}
+				first = false;
+			}
+		} else {
+			EObject contained = createContainedObject(reference, parser, resource);
+
+			if (contained != null) {
+				if (reference.isMany()) {
+					@SuppressWarnings("unchecked")
+					EList<EObject> values = (EList<EObject>) eObject.eGet(reference);
+					deserializer.addContained(values, contained);
+				} else {
+					eObject.eSet(reference, contained);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the offset of the array starting at the current token, -1 if the parser does
+	 * not read bytes. The location of the token may be the one of its key, the parser is
+	 * right after the opening bracket of the array.
+	 */
+	private static long getArrayOffset(JsonParser parser) {
+		final long offset = parser.getCurrentLocation().getByteOffset();
+		return offset > 0 ? offset - 1 : -1;
+	}
+
+	/**
+	 * Skips the remaining elements of a containment array, from the current token. They are
+	 * recorded in the deferred contents of the load with the offset of the array.
+	 */
+	private void defer(EObject eObject, EReference reference, JsonParser parser, long offset, int read) throws IOException {
+		@SuppressWarnings("unchecked")
+		final EList<EObject> values = (EList<EObject>) eObject.eGet(reference);
+		deferred.add(eObject, reference, baseOffset + offset, read, values.size());
+
+		do {
+			parser.skipChildren();
+		} while (parser.nextToken() != JsonToken.END_ARRAY && parser.getCurrentToken() != null);
+	}
+
+	private EObject createContainedObject(EReference reference, JsonParser parser, Resource resource) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+			if (projection != null && !projection.includesDepth(level + 1)) {
+				parser.skipChildren();
+				return null;
+			}
+
+			level++;
+			try {
+				return readObject(parser, null, reference, resource);
+			} finally {
+				level--;
+			}
+		}
+
+		parser.skipChildren();
+		return null;
+	}
+
+	/**
+	 * Reads the remaining of an object containing a $ref key and creates a proxy
+	 * from it. Such objects are small, they are read as a {@link JsonNode}.
+	 */
+	private EObject readProxy(JsonParser parser, TokenBuffer buffer, String key, EReference containment, Resource resource) throws IOException {
+		final ObjectNode node;
+		if (buffer == null) {
+			node = mapper.createObjectNode();
+		} else {
+			buffer.writeEndObject();
+			node = mapper.readTree(buffer.asParser());
+		}
+
+		JsonNode value = mapper.readTree(parser);
+		node.put(key, value);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String current = parser.getCurrentName();
+			parser.nextToken();
+			value = mapper.readTree(parser);
+			node.put(current, value);
+		}
+
+		final EClass eClass = JSUtil.findEClass(containment.getEReferenceType(), node, null, resource, deserializer.getNamespaces());
+
+		return deserializer.getProxyFactory().createProxy(resource, eClass, node);
+	}
+
+	/**
+	 * Returns the EClass corresponding to the value of an eClass key.
+	 */
+	EClass findType(String type, EReference containment, Resource resource) {
+		if (containment != null) {
+			final Resource typeResource = containment.getEReferenceType().eResource();
+
+			try {
+				EClass eClass = deserializer.getEClass(type, typeResource, resource.getResourceSet());
+				if (eClass != null)
+					return eClass;
+			} catch (ClassCastException e) {
+			}
+		}
+
+		return deserializer.getEClass(type, resource, resource.getResourceSet());
+	}
+
+	void readNamespaces(JsonParser parser) throws IOException {
+		final Map<String, String> namespaces = new HashMap<String, String>();
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String prefix = parser.getCurrentName();
+			parser.nextToken();
+			namespaces.put(prefix, asText(parser));
+		}
+
+		deserializer.putNamespaces(namespaces);
+	}
+
+	void skipFields(JsonParser parser) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			parser.nextToken();
+			parser.skipChildren();
+		}
+	}
+
+	/**
+	 * Returns the text of the current value, same as {@link JsonNode#asText()}
+	 * would on the corresponding node.
+	 */
+	static String asText(JsonParser parser) throws IOException {
+		switch (parser.getCurrentToken()) {
+		case VALUE_NUMBER_INT:
+			return parser.getNumberValue().toString();
+		case VALUE_NUMBER_FLOAT:
+			return String.valueOf(parser.getDoubleValue());
+		case VALUE_TRUE:
+			return "true";
+		case VALUE_FALSE:
+			return "false";
+		case VALUE_NULL:
+			return "null";
+		case START_OBJECT:
+		case START_ARRAY:
+			parser.skipChildren();
+			return "";
+		default:
+			return parser.getText();
+		}
+	}
+
+}
@@ -0,0 +1,592 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import static org.eclipselabs.emfjson.common.Constants.EJS_NS_KEYWORD;
+import static org.eclipselabs.emfjson.common.Constants.EJS_REF_KEYWORD;
+import static org.eclipselabs.emfjson.common.Constants.EJS_TYPE_KEYWORD;
+import static org.eclipselabs.emfjson.common.ModelUtil.getElementName;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EDataType;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.FeatureMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Writes a {@link Resource} directly to a {@link JsonGenerator}, without
+ * building an intermediate {@link ObjectNode} tree.
+ *
+ * The output is the same as the one produced by {@link Serializer}, and
+ * written with the same {@link ObjectMapper}.
+ *
+ * @since 0.8.0
+ */
+class StreamSerializer {
+
+	boolean serializeTypes = true;
+	boolean serializeRefTypes = true;
+	boolean serializeNamespaces = false;
+	boolean lineDelimited = false;
+
+	private final Map<String, String> namespaces = new HashMap<String, String>();
+
+	/**
+	 * Used for objects holding a dynamic map, for which keys may
+	 * override previously serialized values.
+	 */
+	private final Serializer treeSerializer = new Serializer(namespaces);
+
+	/**
+	 * Positions of the objects written in the counted stream, null if objects are not indexed.
+	 */
+	private ObjectIndex index;
+	private CountingOutputStream counter;
+	private int parent = -1;
+
+	void to(Resource resource, JsonGenerator generator, ObjectMapper mapper) throws IOException {
+		treeSerializer.useTypeTags(resource);
+
+		if (serializeNamespaces) {
+			// namespaces are written first but only known once
+			// the whole resource has been visited.
+			for (EObject eObject: resource.getContents()) {
+				collectNamespaces(eObject, resource, mapper);
+			}
+		}
+
+		write(resource, generator, mapper);
+	}
+
+	private void write(Resource resource, JsonGenerator generator, ObjectMapper mapper) throws IOException {
+		final EList<EObject> contents = resource.getContents();
+
+		if (lineDelimited) {
+			writeLines(resource, generator, mapper);
+		}
+		else if (contents.size() == 1) {
+			generator.writeStartObject();
+			final int entry = beginEntry(contents.get(0), null, 0, generator);
+
+			if (serializeNamespaces) {
+				writeNamespaces(generator);
+			}
+
+			writeObjectFields(contents.get(0), resource, generator, mapper);
+			generator.writeEndObject();
+			endEntry(entry, generator);
+		}
+		else {
+			generator.writeStartArray();
+
+			if (serializeNamespaces) {
+				generator.writeStartObject();
+				writeNamespaces(generator);
+				generator.writeEndObject();
+			}
+
+			for (int i = 0; i < contents.size(); i++) {
+				writeRoot(contents.get(i), i, resource, generator, mapper);
+			}
+
+			generator.writeEndArray();
+		}
+	}
+
+	/**
+	 * Writes each root object on its own line. If namespaces are serialized, 
+	 * they are written on the first line in an object without eClass key.
+	 */
+	private void writeLines(Resource resource, JsonGenerator generator, ObjectMapper mapper) throws IOException {
+		generator.setRootValueSeparator(null);
+
+		if (serializeNamespaces) {
+			generator.writeStartObject();
+			writeNamespaces(generator);
+			generator.writeEndObject();
+			generator.writeRaw('\n');
+		}
+
+		final EList<EObject> contents = resource.getContents();
+		for (int i = 0; i < contents.size(); i++) {
+			writeRoot(contents.get(i), i, resource, generator, mapper);
+			generator.writeRaw('\n');
+		}
+	}
+
+	private void writeNamespaces(JsonGenerator generator) throws IOException {
+		generator.writeFieldName(EJS_NS_KEYWORD);
+		generator.writeStartObject();
+		for (String key: namespaces.keySet()) {
+			generator.writeStringField(key, namespaces.get(key));
+		}
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Collects the namespaces used by the object and its contents without writing them, 
+	 * visiting the types that writing the object would write, in the same order.
+	 */
+	void collectNamespaces(EObject eObject, Resource resource, ObjectMapper mapper) {
+		final EClass eClass = eObject.eClass();
+		final SerializationPlan plan = treeSerializer.getPlan(eClass);
+		final EStructuralFeature dynamicMap = plan.dynamicMapEntry;
+
+		if (dynamicMap != null && eObject.eIsSet(dynamicMap)) {
+			treeSerializer.to(eObject, resource, mapper.createObjectNode());
+			return;
+		}
+
+		if (serializeTypes) {
+			eClassRef(eClass);
+		}
+
+		for (int i = 0; i < plan.attributes.length; i++) {
+			if (plan.attributeKinds[i] == SerializationPlan.FEATURE_MAP && plan.isAttributeCandidate(eObject, i)) {
+				collectFeatureMapNamespaces(eObject, plan.attributes[i], resource, mapper);
+			}
+		}
+
+		for (int i = 0; i < plan.references.length; i++) {
+			if (plan.referenceKinds[i] != SerializationPlan.MAP_ENTRY && plan.isReferenceCandidate(eObject, i)) {
+				collectNamespaces(plan.references[i], plan.getReferenceValue(eObject, i), resource, mapper);
+			}
+		}
+	}
+
+	private void collectFeatureMapNamespaces(EObject eObject, EAttribute eAttribute, Resource resource, ObjectMapper mapper) {
+		final FeatureMap.Internal featureMap = (FeatureMap.Internal) eObject.eGet(eAttribute);
+		final Iterator<FeatureMap.Entry> iterator = featureMap.basicIterator();
+		final Set<EStructuralFeature> features = new LinkedHashSet<EStructuralFeature>();
+
+		while (iterator.hasNext()) {
+			final EStructuralFeature feature = iterator.next().getEStructuralFeature();
+			if (feature instanceof EReference) {
+				features.add(feature);
+			}
+		}
+
+		for (EStructuralFeature feature: features) {
+			collectNamespaces((EReference) feature, eObject.eGet(feature), resource, mapper);
+		}
+	}
+
+	private void collectNamespaces(EReference reference, Object value, Resource resource, ObjectMapper mapper) {
+		if (reference.isMany()) {
+			@SuppressWarnings("unchecked")
+			EList<EObject> values = (EList<EObject>) value;
+
+			for (EObject current: values) {
+				collectValueNamespaces(reference, current, resource, mapper);
+			}
+		} else {
+			collectValueNamespaces(reference, (EObject) value, resource, mapper);
+		}
+	}
+
+	private void collectValueNamespaces(EReference reference, EObject value, Resource resource, ObjectMapper mapper) {
+		if (value == null) {
+			return;
+		}
+
+		final EReferenceSerializer references = treeSerializer.getReferenceSerializer();
+
+		if (!reference.isContainment()) {
+			references.collectNamespace(value, resource);
+			if (serializeRefTypes) {
+				eClassRef(value.eClass());
+			}
+		} else if (value.eIsProxy() || !references.isWrittenIn(value, resource)) {
+			references.collectNamespace(value, resource);
+		} else {
+			collectNamespaces(value, resource, mapper);
+		}
+	}
+
+	void writeObject(EObject eObject, Resource resource, JsonGenerator generator, ObjectMapper mapper) throws IOException {
+		generator.writeStartObject();
+		writeObjectFields(eObject, resource, generator, mapper);
+		generator.writeEndObject();
+	}
+
+	private void writeRoot(EObject eObject, int position, Resource resource, JsonGenerator generator, ObjectMapper mapper) throws IOException {
+		generator.writeStartObject();
+		final int entry = beginEntry(eObject, null, position, generator);
+		writeObjectFields(eObject, resource, generator, mapper);
+		generator.writeEndObject();
+		endEntry(entry, generator);
+	}
+
+	private void writeObjectFields(EObject eObject, Resource resource, JsonGenerator generator, ObjectMapper mapper) throws IOException {
+		final EClass eClass = eObject.eClass();
+		final SerializationPlan plan = treeSerializer.getPlan(eClass);
+		final EStructuralFeature dynamicMap = plan.dynamicMapEntry;
+
+		if (dynamicMap != null && eObject.eIsSet(dynamicMap)) {
+			// map keys can replace values already present in the object,
+			// delegates to the tree serializer to keep the same output.
+			ObjectNode node = treeSerializer.to(eObject, resource, mapper.createObjectNode());
+			for (Iterator<String> it = node.fieldNames(); it.hasNext();) {
+				String key = it.next();
+				generator.writeFieldName(key);
+				mapper.writeTree(generator, node.get(key));
+			}
+			return;
+		}
+
+		if (serializeTypes) {
+			generator.writeStringField(EJS_TYPE_KEYWORD, eClassRef(eClass));
+		}
+
+		writeAttributes(eObject, plan, resource, generator, mapper);
+		writeReferences(eObject, plan, resource, generator, mapper);
+	}
+
+	private void writeAttributes(EObject eObject, SerializationPlan plan, Resource resource, JsonGenerator generator, ObjectMapper mapper) throws IOException {
+		for (int i = 0; i < plan.attributes.length; i++) {
+
+			if (plan.isAttributeCandidate(eObject, i)) {
+				final EAttribute eAttribute = plan.attributes[i];
+
+				switch (plan.attributeKinds[i]) {
+				case SerializationPlan.FEATURE_MAP:
+					writeFeatureMap(eObject, eAttribute, resource, generator, mapper);
+					break;
+				case SerializationPlan.MANY_VALUES:
+					writeManyValues(plan.attributeKeys[i], eAttribute, (EList<?>) plan.getAttributeValue(eObject, i), generator);
+					break;
+				default:
+					Object value = plan.getAttributeValue(eObject, i);
+					if (value != null) {
+						generator.writeFieldName(plan.attributeKeys[i]);
+						writeValue(eAttribute, value, generator);
+					}
+				}
+			}
+		}
+	}
+
+	private void writeManyValues(String key, EAttribute eAttribute, EList<?> rawValues, JsonGenerator generator) throws IOException {
+		if (!rawValues.isEmpty()) {
+			generator.writeFieldName(key);
+			generator.writeStartArray();
+			for (Object value: rawValues) {
+				if (value != null) {
+					writeValue(eAttribute, value, generator);
+				}
+			}
+			generator.writeEndArray();
+		}
+	}
+
+	/**
+	 * Features appearing in a feature map are written once, in the order of
+	 * their first entry. Attributes keep the value of their last entry.
+	 */
+	private void writeFeatureMap(EObject eObject, EAttribute eAttribute, Resource resource, JsonGenerator generator, ObjectMapper mapper) throws IOException {
+		final FeatureMap.Internal featureMap = (FeatureMap.Internal) eObject.eGet(eAttribute);
+		final Iterator<FeatureMap.Entry> iterator = featureMap.basicIterator();
+		final Map<EStructuralFeature, Object> features = new LinkedHashMap<EStructuralFeature, Object>();
+
+		while (iterator.hasNext()) {
+			FeatureMap.Entry entry = iterator.next();
+			EStructuralFeature feature = entry.getEStructuralFeature();
+			Object value = entry.getValue();
+
+			if (feature instanceof EAttribute) {
+				if (value != null) {
+					features.put(feature, value);
+				}
+			} else if (feature instanceof EReference && !features.containsKey(feature)) {
+				features.put(feature, null);
+			}
+		}
+
+		for (Entry<EStructuralFeature, Object> entry: features.entrySet()) {
+			EStructuralFeature feature = entry.getKey();
+
+			if (feature instanceof EAttribute) {
+				generator.writeFieldName(getElementName(feature));
+				writeValue((EAttribute) feature, entry.getValue(), generator);
+			} else if (((EReference) feature).isContainment()) {
+				writeContainments(eObject, (EReference) feature, getElementName(feature), 
+						eObject.eGet(feature), resource, generator, mapper);
+			} else {
+				writeNonContainments((EReference) feature, 
+						feature.isMany() ? getElementName(feature) : feature.getName(), 
+						eObject.eGet(feature), resource, generator);
+			}
+		}
+	}
+
+	void writeValue(EAttribute attribute, Object value, JsonGenerator generator) throws IOException {
+		final EDataType dataType = attribute.getEAttributeType();
+		treeSerializer.getValueCodecs().getCodec(dataType).write(dataType, value, generator);
+	}
+
+	private void writeReferences(EObject eObject, SerializationPlan plan, Resource resource, JsonGenerator generator, ObjectMapper mapper) throws IOException {
+		for (int i = 0; i < plan.references.length; i++) {
+
+			if (plan.isReferenceCandidate(eObject, i)) {
+				final EReference eReference = plan.references[i];
+
+				switch (plan.referenceKinds[i]) {
+				case SerializationPlan.MAP_ENTRY:
+					writeMapEntry(eObject, eReference, generator);
+					break;
+				case SerializationPlan.CONTAINMENT:
+					writeContainments(eObject, eReference, plan.referenceKeys[i], plan.getReferenceValue(eObject, i), resource, generator, mapper);
+					break;
+				default:
+					writeNonContainments(eReference, plan.referenceKeys[i], plan.getReferenceValue(eObject, i), resource, generator);
+				}
+			}
+		}
+	}
+
+	private void writeNonContainments(EReference reference, String key, Object value, Resource resource, JsonGenerator generator) throws IOException {
+		generator.writeFieldName(key);
+
+		if (reference.isMany()) {
+			@SuppressWarnings("unchecked")
+			EList<EObject> values = (EList<EObject>) value;
+
+			generator.writeStartArray();
+			for (EObject current: values) {
+				writeReferenceValue(current, resource, generator);
+			}
+			generator.writeEndArray();
+		} else {
+			writeReferenceValue((EObject) value, resource, generator);
+		}
+	}
+
+	private void writeReferenceValue(EObject value, Resource resource, JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField(EJS_REF_KEYWORD, getReference(value, resource));
+
+		if (serializeRefTypes) {
+			generator.writeStringField(EJS_TYPE_KEYWORD, eClassRef(value.eClass()));
+		}
+		generator.writeEndObject();
+	}
+
+	private void writeContainments(EObject eObject, EReference reference, String key, Object value, Resource resource, JsonGenerator generator, ObjectMapper mapper) throws IOException {
+		generator.writeFieldName(key);
+
+		if (reference.isMany()) {
+			@SuppressWarnings("unchecked")
+			EList<EObject> values = (EList<EObject>) value;
+
+			generator.writeStartArray();
+			for (int i = 0; i < values.size(); i++) {
+				writeContainmentValue(values.get(i), reference, i, resource, generator, mapper);
+			}
+			generator.writeEndArray();
+		}
+		else {
+			writeContainmentValue((EObject) value, reference, -1, resource, generator, mapper);
+		}
+	}
+
+	private void writeContainmentValue(EObject value, EReference reference, int position, Resource resource, JsonGenerator generator, ObjectMapper mapper) throws IOException {
+		generator.writeStartObject();
+
+		if (value != null) {
+			if (value.eIsProxy() || !treeSerializer.getReferenceSerializer().isWrittenIn(value, resource)) {
+				generator.writeStringField(EJS_REF_KEYWORD, getReference(value, resource));
+			}
+			else {
+				final int entry = beginEntry(value, reference, position, generator);
+				writeObjectFields(value, resource, generator, mapper);
+				generator.writeEndObject();
+				endEntry(entry, generator);
+				return;
+			}
+		}
+
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Adds the object to the index if the generator writes in the counted stream, the start of
+	 * the object must have just been written. The segment of the object is its position among
+	 * the roots if the reference is null, or its default fragment segment in its container.
+	 * Returns the entry of the object, -1 if it is not indexed.
+	 */
+	private int beginEntry(EObject eObject, EReference reference, int position, JsonGenerator generator) throws IOException {
+		if (index == null || generator.getOutputTarget() != counter) {
+			return -1;
+		}
+
+		final String segment;
+		if (reference == null) {
+			segment = String.valueOf(position);
+		} else if (position >= 0) {
+			segment = "@" + reference.getName() + "." + position;
+		} else {
+			segment = "@" + reference.getName();
+		}
+
+		generator.flush();
+		parent = index.add(parent, segment, eObject, counter.getCount() - 1);
+
+		return parent;
+	}
+
+	/**
+	 * Ends the entry of an object, the end of the object must have just been written.
+	 */
+	private void endEntry(int entry, JsonGenerator generator) throws IOException {
+		if (entry != -1) {
+			generator.flush();
+			index.end(entry, counter.getCount());
+			parent = index.getParent(entry);
+		}
+	}
+
+	private void writeMapEntry(EObject eObject, EReference reference, JsonGenerator generator) throws IOException {
+		final Map<String, String> entries = new LinkedHashMap<String, String>();
+
+		if (reference.isMany()) {
+			@SuppressWarnings("unchecked")
+			Collection<Map.Entry<String, String>> values = (Collection<Entry<String, String>>) eObject.eGet(reference);
+
+			for (Map.Entry<String, String> entry: values) {
+				entries.put(entry.getKey(), entry.getValue());
+			}
+		}
+		else {
+			@SuppressWarnings("unchecked")
+			Map.Entry<String, String> entry = (Entry<String, String>) eObject.eGet(reference);
+			entries.put(entry.getKey(), entry.getValue());
+		}
+
+		generator.writeFieldName(reference.getName());
+		generator.writeStartObject();
+		for (Map.Entry<String, String> entry: entries.entrySet()) {
+			if (entry.getValue() == null) {
+				generator.writeNullField(entry.getKey());
+			} else {
+				generator.writeStringField(entry.getKey(), entry.getValue());
+			}
+		}
+		generator.writeEndObject();
+	}
+
+	String getReference(EObject obj, Resource resource) {
+		return treeSerializer.getReferenceSerializer().getReference(obj, resource);
+	}
+
+	String eClassRef(EClass eClass) {
+		return treeSerializer.eClassRef(eClass);
+	}
+
+	void setSerializeRefTypes(boolean serializeRefTypes) {
+		this.serializeRefTypes = serializeRefTypes;
+		this.treeSerializer.setSerializeRefTypes(serializeRefTypes);
+	}
+
+	void setSerializeTypes(boolean serializeTypes) {
+		this.serializeTypes = serializeTypes;
+		this.treeSerializer.setSerializeTypes(serializeTypes);
+	}
+
+	void setSerializeNamespaces(boolean serializeNamespaces) {
+		this.serializeNamespaces = serializeNamespaces;
+		this.treeSerializer.setSerializeNamespaces(serializeNamespaces);
+	}
+
+	void setLineDelimited(boolean lineDelimited) {
+		this.lineDelimited = lineDelimited;
+	}
+
+	void setValueCodecs(ValueCodecs valueCodecs) {
+		this.treeSerializer.setValueCodecs(valueCodecs);
+	}
+
+	void setDetachedRoots(boolean detachedRoots) {
+		this.treeSerializer.setDetachedRoots(detachedRoots);
+	}
+
+	void useTypeTags(Resource resource) {
+		treeSerializer.useTypeTags(resource);
+	}
+
+	Map<String, String> getNamespaces() {
+		return namespaces;
+	}
+
+	/**
+	 * Indexes the objects written to the counted stream. Generators writing to it are
+	 * flushed around each object to know its position.
+	 */
+	void setIndex(ObjectIndex index, CountingOutputStream counter) {
+		this.index = index;
+		this.counter = counter;
+	}
+
+	/**
+	 * Counts the bytes written in an output stream. Flushes are not passed to the
+	 * stream, so that flushing the generator for each object does not reach the
+	 * underlying file, the stream is flushed when closed.
+	 */
+	static class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			// written bytes are counted, they do not need to reach the stream
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+/**
+ * Caches the URIs of the EClasses used as type tags, and the EClasses found
+ * from these URIs, for the resources of a {@link ResourceSet}.
+ *
+ * Cached values are checked before being returned: the URI of an EClass is
+ * computed again if its resource or the URI of its resource changed, or if the
+ * EClass is dynamic since it may have been renamed, an EClass that became a proxy
+ * is looked up again.
+ */
+final class TypeTags extends AdapterImpl {
+
+	private final ResourceSet resourceSet;
+	private final Map<EClass, Tag> tags = new HashMap<EClass, Tag>();
+	private final Map<String, EClass> eClasses = new HashMap<String, EClass>();
+
+	private TypeTags(ResourceSet resourceSet) {
+		this.resourceSet = resourceSet;
+	}
+
+	/**
+	 * Returns the type tags of the resource set, type tags are not shared
+	 * if the resource set is null.
+	 */
+	static TypeTags get(ResourceSet resourceSet) {
+		if (resourceSet == null) {
+			return new TypeTags(null);
+		}
+
+		for (Adapter adapter: resourceSet.eAdapters()) {
+			if (adapter instanceof TypeTags) {
+				return (TypeTags) adapter;
+			}
+		}
+
+		final TypeTags typeTags = new TypeTags(resourceSet);
+		resourceSet.eAdapters().add(typeTags);
+
+		return typeTags;
+	}
+
+	/**
+	 * Returns the URI of the EClass, same as {@link EcoreUtil#getURI(org.eclipse.emf.ecore.EObject)}.
+	 */
+	URI getURI(EClass eClass) {
+		Tag tag = tags.get(eClass);
+
+		if (tag == null || !tag.isValid(eClass)) {
+			tag = new Tag(eClass);
+			tags.put(eClass, tag);
+		}
+
+		return tag.uri;
+	}
+
+	/**
+	 * Returns the EClass of the URI, same as getting the object of the URI
+	 * in the resource set. Throws a {@link ClassCastException} if the object
+	 * is not an EClass.
+	 */
+	EClass getEClass(URI uri) {
+		final String key = uri.toString();
+		EClass eClass = eClasses.get(key);
+
+		if (eClass == null || eClass.eIsProxy()) {
+			eClass = (EClass) resourceSet.getEObject(uri, true);
+			if (eClass != null) {
+				eClasses.put(key, eClass);
+			}
+		}
+
+		return eClass;
+	}
+
+	private static class Tag {
+		final URI uri;
+		final Resource resource;
+		final URI resourceURI;
+
+		Tag(EClass eClass) {
+			this.uri = EcoreUtil.getURI(eClass);
+			this.resource = eClass.eResource();
+			this.resourceURI = resource == null ? null : resource.getURI();
+		}
+
+		boolean isValid(EClass eClass) {
+			final Resource current = eClass.eResource();
+
+			return current == resource && 
+					(current == null || current.getURI() == resourceURI) && 
+					MetamodelCache.isGenerated(eClass);
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import java.io.IOException;
+
+import org.eclipse.emf.ecore.EDataType;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Reads and writes the values of an {@link EDataType}.
+ *
+ * Codecs are registered in {@link ValueCodecs} and are shared by concurrent
+ * loads and saves, implementations must be thread safe.
+ *
+ * @since 0.8.0
+ */
+public interface ValueCodec {
+
+	/**
+	 * Writes a non null value of the data type.
+	 */
+	void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException;
+
+	/**
+	 * Reads the value at the current token of the parser. The parser must be
+	 * left on the last token of the value.
+	 *
+	 * Returns null if no value should be set.
+	 */
+	Object read(EDataType dataType, JsonParser parser) throws IOException;
+
+}
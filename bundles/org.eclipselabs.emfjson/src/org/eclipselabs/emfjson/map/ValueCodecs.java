@@ -0,0 +1,627 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.map;
+
+import static org.eclipse.emf.ecore.util.EcoreUtil.convertToString;
+import static org.eclipse.emf.ecore.util.EcoreUtil.createFromString;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.emf.common.util.Enumerator;
+import org.eclipse.emf.ecore.EDataType;
+import org.eclipse.emf.ecore.EEnum;
+import org.eclipse.emf.ecore.EEnumLiteral;
+import org.eclipse.emf.ecore.EcorePackage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonParser.NumberType;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.DecimalNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+/**
+ * Registry of the {@link ValueCodec}s used to read and write attribute values.
+ *
+ * Codecs registered for a data type take precedence over the built-in codecs,
+ * built-in codecs exist for the primitive types of Ecore and for enumerations.
+ * Values of other data types are converted with the factory of their package.
+ *
+ * A registry is given to a load or save with the option {@link org.eclipselabs.emfjson.EMFJs#OPTION_VALUE_CODECS}.
+ *
+ * @since 0.8.0
+ */
+public class ValueCodecs {
+
+	static final ValueCodecs DEFAULT = new ValueCodecs();
+
+	/**
+	 * Writes BigInteger values as JSON numbers.
+	 */
+	public static final ValueCodec BIG_INTEGER_AS_NUMBER = new BigIntegerCodec(true);
+
+	/**
+	 * Writes BigDecimal values as JSON numbers.
+	 */
+	public static final ValueCodec BIG_DECIMAL_AS_NUMBER = new BigDecimalCodec(true);
+
+	private static final ValueCodec DEFAULT_CODEC = new DefaultCodec();
+	private static final ValueCodec ENUM_CODEC = new EnumCodec();
+	private static final Map<EDataType, ValueCodec> builtIns = new HashMap<EDataType, ValueCodec>();
+
+	static {
+		final EcorePackage ecore = EcorePackage.eINSTANCE;
+
+		final ValueCodec intCodec = new IntCodec();
+		builtIns.put(ecore.getEInt(), intCodec);
+		builtIns.put(ecore.getEIntegerObject(), intCodec);
+
+		final ValueCodec longCodec = new LongCodec();
+		builtIns.put(ecore.getELong(), longCodec);
+		builtIns.put(ecore.getELongObject(), longCodec);
+
+		final ValueCodec shortCodec = new ShortCodec();
+		builtIns.put(ecore.getEShort(), shortCodec);
+		builtIns.put(ecore.getEShortObject(), shortCodec);
+
+		final ValueCodec byteCodec = new ByteCodec();
+		builtIns.put(ecore.getEByte(), byteCodec);
+		builtIns.put(ecore.getEByteObject(), byteCodec);
+
+		final ValueCodec doubleCodec = new DoubleCodec();
+		builtIns.put(ecore.getEDouble(), doubleCodec);
+		builtIns.put(ecore.getEDoubleObject(), doubleCodec);
+
+		final ValueCodec floatCodec = new FloatCodec();
+		builtIns.put(ecore.getEFloat(), floatCodec);
+		builtIns.put(ecore.getEFloatObject(), floatCodec);
+
+		final ValueCodec booleanCodec = new BooleanCodec();
+		builtIns.put(ecore.getEBoolean(), booleanCodec);
+		builtIns.put(ecore.getEBooleanObject(), booleanCodec);
+
+		builtIns.put(ecore.getEString(), new StringCodec());
+		builtIns.put(ecore.getEDate(), new DateCodec());
+		builtIns.put(ecore.getEBigInteger(), new BigIntegerCodec(false));
+		builtIns.put(ecore.getEBigDecimal(), new BigDecimalCodec(false));
+	}
+
+	private final Map<EDataType, ValueCodec> codecs = new ConcurrentHashMap<EDataType, ValueCodec>();
+
+	/**
+	 * Registers the codec used for the values of the data type.
+	 */
+	public ValueCodecs register(EDataType dataType, ValueCodec codec) {
+		codecs.put(dataType, codec);
+		return this;
+	}
+
+	/**
+	 * Returns the codec used for the values of the data type.
+	 */
+	public ValueCodec getCodec(EDataType dataType) {
+		ValueCodec codec = codecs.isEmpty() ? null : codecs.get(dataType);
+
+		if (codec == null) {
+			codec = builtIns.get(dataType);
+		}
+		if (codec == null) {
+			codec = dataType instanceof EEnum ? ENUM_CODEC : DEFAULT_CODEC;
+		}
+
+		return codec;
+	}
+
+	/**
+	 * Codec that also creates the node of the values it writes, built-in codecs
+	 * are used this way by the tree serializer instead of converting the tokens
+	 * they write into a node.
+	 */
+	interface NodeCodec extends ValueCodec {
+
+		/**
+		 * Returns the node of the value, same as the node of the tokens written
+		 * by {@link #write(EDataType, Object, JsonGenerator)}.
+		 */
+		JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory);
+	}
+
+	/**
+	 * Returns the value created by the factory of the data type from the text
+	 * of the current value, or null if the text is blank.
+	 */
+	static Object readText(EDataType dataType, JsonParser parser) throws IOException {
+		final String text = StreamDeserializer.asText(parser);
+
+		if (text == null || text.trim().isEmpty()) {
+			return null;
+		}
+
+		return createFromString(dataType, text);
+	}
+
+	/**
+	 * Codec of data types without built-in codecs, values are written depending
+	 * on their class, and read with the factory of the data type.
+	 */
+	private static class DefaultCodec implements NodeCodec {
+
+		@Override
+		public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+			if (value instanceof Integer) {
+				generator.writeNumber((Integer) value);
+			}
+			else if (value instanceof Boolean) {
+				generator.writeBoolean((Boolean) value);
+			}
+			else if (value instanceof Date) {
+				DateCodec.writeDate((Date) value, generator);
+			}
+			else if (value instanceof Double) {
+				generator.writeNumber((Double) value);
+			}
+			else if (value instanceof Long) {
+				generator.writeNumber((Long) value);
+			}
+			else if (value instanceof Short) {
+				generator.writeNumber((Short) value);
+			}
+			else if (value instanceof Float) {
+				generator.writeNumber((Float) value);
+			}
+			else {
+				String stringValue = convertToString(dataType, value);
+				if (stringValue == null) {
+					generator.writeNull();
+				} else {
+					generator.writeString(stringValue);
+				}
+			}
+		}
+
+		@Override
+		public JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory) {
+			if (value instanceof Integer) {
+				return factory.numberNode((Integer) value);
+			}
+			else if (value instanceof Boolean) {
+				return factory.booleanNode((Boolean) value);
+			}
+			else if (value instanceof Date) {
+				return factory.textNode(DateCodec.format((Date) value));
+			}
+			else if (value instanceof Double) {
+				return factory.numberNode((Double) value);
+			}
+			else if (value instanceof Long) {
+				return factory.numberNode((Long) value);
+			}
+			else if (value instanceof Short) {
+				return factory.numberNode((int) (Short) value);
+			}
+			else if (value instanceof Float) {
+				return factory.numberNode((Float) value);
+			}
+			else {
+				String stringValue = convertToString(dataType, value);
+				return stringValue == null ? factory.nullNode() : factory.textNode(stringValue);
+			}
+		}
+
+		@Override
+		public Object read(EDataType dataType, JsonParser parser) throws IOException {
+			return readText(dataType, parser);
+		}
+	}
+
+	private static class IntCodec implements NodeCodec {
+
+		@Override
+		public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+			generator.writeNumber((Integer) value);
+		}
+
+		@Override
+		public JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory) {
+			return factory.numberNode((Integer) value);
+		}
+
+		@Override
+		public Object read(EDataType dataType, JsonParser parser) throws IOException {
+			if (parser.getCurrentToken() == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() == NumberType.INT) {
+				return parser.getIntValue();
+			}
+			return readText(dataType, parser);
+		}
+	}
+
+	private static class LongCodec implements NodeCodec {
+
+		@Override
+		public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+			generator.writeNumber((Long) value);
+		}
+
+		@Override
+		public JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory) {
+			return factory.numberNode((Long) value);
+		}
+
+		@Override
+		public Object read(EDataType dataType, JsonParser parser) throws IOException {
+			if (parser.getCurrentToken() == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != NumberType.BIG_INTEGER) {
+				return parser.getLongValue();
+			}
+			return readText(dataType, parser);
+		}
+	}
+
+	private static class ShortCodec implements NodeCodec {
+
+		@Override
+		public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+			generator.writeNumber((Short) value);
+		}
+
+		@Override
+		public JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory) {
+			// same node as the one of the tokens, an int node
+			return factory.numberNode((int) (Short) value);
+		}
+
+		@Override
+		public Object read(EDataType dataType, JsonParser parser) throws IOException {
+			if (parser.getCurrentToken() == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() == NumberType.INT) {
+				final int value = parser.getIntValue();
+				if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+					return (short) value;
+				}
+			}
+			return readText(dataType, parser);
+		}
+	}
+
+	/**
+	 * Bytes are written as strings.
+	 */
+	private static class ByteCodec implements NodeCodec {
+
+		@Override
+		public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+			generator.writeString(value.toString());
+		}
+
+		@Override
+		public JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory) {
+			return factory.textNode(value.toString());
+		}
+
+		@Override
+		public Object read(EDataType dataType, JsonParser parser) throws IOException {
+			if (parser.getCurrentToken() == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() == NumberType.INT) {
+				final int value = parser.getIntValue();
+				if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+					return (byte) value;
+				}
+			}
+			return readText(dataType, parser);
+		}
+	}
+
+	private static class DoubleCodec implements NodeCodec {
+
+		@Override
+		public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+			generator.writeNumber((Double) value);
+		}
+
+		@Override
+		public JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory) {
+			return factory.numberNode((Double) value);
+		}
+
+		@Override
+		public Object read(EDataType dataType, JsonParser parser) throws IOException {
+			final JsonToken token = parser.getCurrentToken();
+			if (token == JsonToken.VALUE_NUMBER_FLOAT ||
+					(token == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != NumberType.BIG_INTEGER)) {
+				return parser.getDoubleValue();
+			}
+			return readText(dataType, parser);
+		}
+	}
+
+	private static class FloatCodec implements NodeCodec {
+
+		@Override
+		public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+			generator.writeNumber((Float) value);
+		}
+
+		@Override
+		public JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory) {
+			return factory.numberNode((Float) value);
+		}
+
+		@Override
+		public Object read(EDataType dataType, JsonParser parser) throws IOException {
+			final JsonToken token = parser.getCurrentToken();
+			if (token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_NUMBER_INT) {
+				return Float.parseFloat(parser.getText());
+			}
+			return readText(dataType, parser);
+		}
+	}
+
+	private static class BooleanCodec implements NodeCodec {
+
+		@Override
+		public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+			generator.writeBoolean((Boolean) value);
+		}
+
+		@Override
+		public JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory) {
+			return factory.booleanNode((Boolean) value);
+		}
+
+		@Override
+		public Object read(EDataType dataType, JsonParser parser) throws IOException {
+			switch (parser.getCurrentToken()) {
+			case VALUE_TRUE:
+				return Boolean.TRUE;
+			case VALUE_FALSE:
+				return Boolean.FALSE;
+			default:
+				return readText(dataType, parser);
+			}
+		}
+	}
+
+	/**
+	 * Blank strings are not read, same as values of other data types.
+	 */
+	private static class StringCodec implements NodeCodec {
+
+		@Override
+		public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+			generator.writeString((String) value);
+		}
+
+		@Override
+		public JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory) {
+			return factory.textNode((String) value);
+		}
+
+		@Override
+		public Object read(EDataType dataType, JsonParser parser) throws IOException {
+			if (parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+				final String text = parser.getText();
+				return text.trim().isEmpty() ? null : text;
+			}
+			return readText(dataType, parser);
+		}
+	}
+
+	/**
+	 * Dates are written with the format yyyy-MM-dd'T'HH:mm:ss. Other formats
+	 * are read with the factory of the data type.
+	 */
+	private static class DateCodec implements NodeCodec {
+
+		private static final ThreadLocal<SimpleDateFormat> format = new ThreadLocal<SimpleDateFormat>() {
+			@Override
+			protected SimpleDateFormat initialValue() {
+				return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+			}
+		};
+
+		static String format(Date value) {
+			return format.get().format(value);
+		}
+
+		static void writeDate(Date value, JsonGenerator generator) throws IOException {
+			generator.writeString(format(value));
+		}
+
+		@Override
+		public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+			writeDate((Date) value, generator);
+		}
+
+		@Override
+		public JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory) {
+			return factory.textNode(format((Date) value));
+		}
+
+		@Override
+		public Object read(EDataType dataType, JsonParser parser) throws IOException {
+			if (parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+				final String text = parser.getText();
+				final ParsePosition position = new ParsePosition(0);
+				final Date date = format.get().parse(text, position);
+
+				if (date != null && position.getIndex() == text.length()) {
+					return date;
+				}
+			}
+			return readText(dataType, parser);
+		}
+	}
+
+	/**
+	 * Writes values as strings, unless created as number codec. Reads numbers and strings.
+	 */
+	private static class BigIntegerCodec implements NodeCodec {
+
+		private final boolean asNumber;
+
+		BigIntegerCodec(boolean asNumber) {
+			this.asNumber = asNumber;
+		}
+
+		@Override
+		public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+			if (asNumber) {
+				generator.writeNumber((BigInteger) value);
+			} else {
+				generator.writeString(value.toString());
+			}
+		}
+
+		@Override
+		public JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory) {
+			return asNumber ? factory.numberNode((BigInteger) value) : factory.textNode(value.toString());
+		}
+
+		@Override
+		public Object read(EDataType dataType, JsonParser parser) throws IOException {
+			if (parser.getCurrentToken() == JsonToken.VALUE_NUMBER_INT) {
+				return parser.getBigIntegerValue();
+			}
+			return readText(dataType, parser);
+		}
+	}
+
+	/**
+	 * Writes values as strings, unless created as number codec. Reads numbers and strings.
+	 */
+	private static class BigDecimalCodec implements NodeCodec {
+
+		private final boolean asNumber;
+
+		BigDecimalCodec(boolean asNumber) {
+			this.asNumber = asNumber;
+		}
+
+		@Override
+		public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+			if (asNumber) {
+				generator.writeNumber((BigDecimal) value);
+			} else {
+				generator.writeString(value.toString());
+			}
+		}
+
+		@Override
+		public JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory) {
+			// not normalized, keeps the scale of the value
+			return asNumber ? DecimalNode.valueOf((BigDecimal) value) : factory.textNode(value.toString());
+		}
+
+		@Override
+		public Object read(EDataType dataType, JsonParser parser) throws IOException {
+			final JsonToken token = parser.getCurrentToken();
+			if (token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_NUMBER_INT) {
+				return parser.getDecimalValue();
+			}
+			return readText(dataType, parser);
+		}
+	}
+
+	/**
+	 * Enumeration values are written with their literal, and read from
+	 * the values cached for the literals of the EEnum.
+	 */
+	private static class EnumCodec implements NodeCodec {
+
+		@Override
+		public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+			final String literal = value instanceof Enumerator ?
+					((Enumerator) value).getLiteral() : convertToString(dataType, value);
+
+			if (literal == null) {
+				generator.writeNull();
+			} else {
+				generator.writeString(literal);
+			}
+		}
+
+		@Override
+		public JsonNode toNode(EDataType dataType, Object value, JsonNodeFactory factory) {
+			final String literal = value instanceof Enumerator ?
+					((Enumerator) value).getLiteral() : convertToString(dataType, value);
+
+			return literal == null ? factory.nullNode() : factory.textNode(literal);
+		}
+
+		@Override
+		public Object read(EDataType dataType, JsonParser parser) throws IOException {
+			final String text = StreamDeserializer.asText(parser);
+
+			if (text == null || text.trim().isEmpty()) {
+				return null;
+			}
+
+			return EnumLiterals.getValue((EEnum) dataType, text);
+		}
+	}
+
+	/**
+	 * Values of the literals of EEnums, the EEnums are not modified. Values are kept in 
+	 * a map weakly keyed by EEnum, and held softly since literals refer to their EEnum. 
+	 * A cached value is checked against the EEnum before it is returned, values of 
+	 * literals that have been renamed or removed from a dynamic EEnum are read again.
+	 */
+	private static class EnumLiterals {
+
+		private static final Map<EEnum, SoftReference<Map<String, Object>>> cache = 
+				new WeakHashMap<EEnum, SoftReference<Map<String, Object>>>();
+
+		static Object getValue(EEnum eEnum, String literal) {
+			final Map<String, Object> values = getValues(eEnum);
+
+			Object value = values.get(literal);
+			if (value == null || !isCurrent(eEnum, literal, value)) {
+				value = createFromString(eEnum, literal);
+				if (value != null) {
+					values.put(literal, value);
+				}
+			}
+
+			return value;
+		}
+
+		private static Map<String, Object> getValues(EEnum eEnum) {
+			synchronized (cache) {
+				final SoftReference<Map<String, Object>> reference = cache.get(eEnum);
+				Map<String, Object> values = reference == null ? null : reference.get();
+
+				if (values == null) {
+					values = new ConcurrentHashMap<String, Object>();
+					cache.put(eEnum, new SoftReference<Map<String, Object>>(values));
+				}
+
+				return values;
+			}
+		}
+
+		private static boolean isCurrent(EEnum eEnum, String literal, Object value) {
+			if (value instanceof EEnumLiteral) {
+				final EEnumLiteral enumLiteral = (EEnumLiteral) value;
+				return enumLiteral.getEEnum() == eEnum && literal.equals(enumLiteral.getLiteral());
+			}
+			return true;
+		}
+	}
+
+}
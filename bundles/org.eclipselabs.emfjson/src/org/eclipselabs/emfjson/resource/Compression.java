@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compresses the documents of a {@link JsResourceImpl} while they are written,
+ * and decompresses them while they are read.
+ *
+ * A compression is given to a load or save with the option {@link org.eclipselabs.emfjson.EMFJs#OPTION_COMPRESSION},
+ * built-in compressions are in {@link Compressions}. Compressions are shared by
+ * concurrent loads and saves, implementations must be thread safe.
+ *
+ * @since 0.8.0
+ */
+public interface Compression {
+
+	/**
+	 * Returns true if the first bytes of a document are the header of
+	 * a stream compressed by this compression. The header holds at most
+	 * {@link Compressions#HEADER_LENGTH} bytes, length is the number of bytes read.
+	 */
+	boolean isCompressed(byte[] header, int length);
+
+	/**
+	 * Returns a stream that decompresses the input stream.
+	 */
+	InputStream decompress(InputStream inputStream) throws IOException;
+
+	/**
+	 * Returns a stream that compresses what is written in the output stream.
+	 * Closing the returned stream must close the output stream.
+	 */
+	OutputStream compress(OutputStream outputStream) throws IOException;
+
+	/**
+	 * Writes the remaining compressed data of a stream returned by {@link #compress(OutputStream)},
+	 * without closing the output stream.
+	 */
+	void finish(OutputStream compressed) throws IOException;
+
+}
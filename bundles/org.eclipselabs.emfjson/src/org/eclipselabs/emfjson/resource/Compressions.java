@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.resource;
+
+import java.io.BufferedInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipselabs.emfjson.EMFJs;
+
+/**
+ * Built-in {@link Compression}s, and the choice of the compression of a document.
+ *
+ * On load, the document is decompressed if its first bytes are the header of the
+ * compression given by the option {@link EMFJs#OPTION_COMPRESSION}, or of gzip if
+ * the option is not set. On save, the document is compressed with the compression
+ * given by the option, or with gzip if the option is not set and the extension of
+ * the resource URI is gz. Documents are compressed and decompressed while they are
+ * written and read.
+ *
+ * @since 0.8.0
+ */
+public final class Compressions {
+
+	/**
+	 * Number of bytes read to recognize a compressed document.
+	 */
+	public static final int HEADER_LENGTH = 4;
+
+	/**
+	 * Compresses documents with gzip.
+	 */
+	public static final Compression GZIP = new GzipCompression();
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private Compressions() {
+	}
+
+	/**
+	 * Returns a stream decompressing the input stream if it is compressed,
+	 * otherwise a stream reading the input stream from its first byte.
+	 */
+	static InputStream decompress(InputStream inputStream, Map<?, ?> options) throws IOException {
+		final Object value = options.get(EMFJs.OPTION_COMPRESSION);
+		final Compression compression = value instanceof Compression ? (Compression) value : GZIP;
+		final InputStream in = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream, BUFFER_SIZE);
+
+		final byte[] header = new byte[HEADER_LENGTH];
+		in.mark(HEADER_LENGTH);
+
+		int length = 0;
+		int read = 0;
+		while (length < HEADER_LENGTH && (read = in.read(header, length, HEADER_LENGTH - length)) != -1) {
+			length += read;
+		}
+		in.reset();
+
+		return compression.isCompressed(header, length) ? compression.decompress(in) : in;
+	}
+
+	/**
+	 * Returns a stream compressing what is written in the output stream. Closing
+	 * the returned stream finishes the compression, the output stream is left
+	 * open for its owner to close.
+	 */
+	static OutputStream compress(final Compression compression, OutputStream outputStream) throws IOException {
+		return new FilterOutputStream(compression.compress(outputStream)) {
+			private boolean finished;
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (!finished) {
+					finished = true;
+					compression.finish(out);
+					out.flush();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns the compression used to save the resource, null if the
+	 * document is not compressed.
+	 */
+	static Compression getCompression(URI uri, Map<?, ?> options) {
+		final Object value = options.get(EMFJs.OPTION_COMPRESSION);
+
+		if (value instanceof Compression) {
+			return (Compression) value;
+		}
+
+		return uri != null && "gz".equals(uri.fileExtension()) ? GZIP : null;
+	}
+
+	private static class GzipCompression implements Compression {
+
+		@Override
+		public boolean isCompressed(byte[] header, int length) {
+			return length >= 2 && header[0] == (byte) 0x1f && header[1] == (byte) 0x8b;
+		}
+
+		@Override
+		public InputStream decompress(InputStream inputStream) throws IOException {
+			return new GZIPInputStream(inputStream, BUFFER_SIZE);
+		}
+
+		@Override
+		public OutputStream compress(OutputStream outputStream) throws IOException {
+			return new GZIPOutputStream(outputStream, BUFFER_SIZE);
+		}
+
+		@Override
+		public void finish(OutputStream compressed) throws IOException {
+			((GZIPOutputStream) compressed).finish();
+		}
+
+	}
+
+}
@@ -13,13 +13,29 @@ package org.eclipselabs.emfjson.resource;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.impl.ResourceFactoryImpl;
+import org.eclipselabs.emfjson.map.EObjectMapper;
 
 /**
  * An implementation of {@link Resource.Factory} that creates {@link JsResourceImpl}. 
+ * All resources created by the factory share the same {@link EObjectMapper}.
  */
 public class JsResourceFactoryImpl extends ResourceFactoryImpl {
+
+	private final EObjectMapper mapper;
+
+	public JsResourceFactoryImpl() {
+		this(EObjectMapper.getShared());
+	}
+
+	/**
+	 * @since 0.8.0
+	 */
+	public JsResourceFactoryImpl(EObjectMapper mapper) {
+		this.mapper = mapper;
+	}
+
 	@Override
 	public Resource createResource(URI uri) {
-		return new JsResourceImpl(uri);
+		return new JsResourceImpl(uri, mapper);
 	}
 }
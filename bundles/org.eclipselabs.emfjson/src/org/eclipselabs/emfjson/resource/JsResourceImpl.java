@@ -13,28 +13,73 @@ package org.eclipselabs.emfjson.resource;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.URIConverter;
 import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.emf.ecore.util.ECrossReferenceAdapter;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipselabs.emfjson.EMFJs;
+import org.eclipselabs.emfjson.map.DeferredContents;
 import org.eclipselabs.emfjson.map.EObjectMapper;
+import org.eclipselabs.emfjson.map.ObjectIndex;
 
 /**
  * A {@link Resource} implementation that read and write it's content in JSON.
+ *
+ * Elements of containment lists deferred by the option {@link EMFJs#OPTION_LAZY_CONTAINMENT}
+ * are read from the document of the resource when objects are looked up by their fragment,
+ * and before the resource is saved.
+ *
+ * With the option {@link EMFJs#OPTION_SAVE_INDEX}, a save to the URI of the resource also writes
+ * the {@link ObjectIndex} of the document, if the document is not compressed. Saves without the
+ * option delete the index written or read by the resource, saves with the option set to false
+ * delete any index of the document.
  */
-public class JsResourceImpl extends ResourceImpl {
+public class JsResourceImpl extends ResourceImpl implements DeferredContents.Host {
 	
-	private final EObjectMapper mapper = new EObjectMapper();
+	private final EObjectMapper mapper;
+	private List<Adapter> pending;
+	private boolean loadingURI;
+	private boolean savingURI;
+	private boolean indexed;
 
 	public JsResourceImpl() {
 		super();
+		this.mapper = EObjectMapper.getShared();
 	}
 
 	public JsResourceImpl(URI uri) {
+		this(uri, EObjectMapper.getShared());
+	}
+
+	/**
+	 * Creates a resource that reads and writes its content with the given mapper.
+	 *
+	 * @since 0.8.0
+	 */
+	public JsResourceImpl(URI uri, EObjectMapper mapper) {
 		super(uri);
+		this.mapper = mapper;
+	}
+
+	@Override
+	public void load(Map<?, ?> options) throws IOException {
+		loadingURI = true;
+		try {
+			super.load(options);
+		} finally {
+			loadingURI = false;
+		}
 	}
 
 	@Override
@@ -43,10 +88,148 @@ public class JsResourceImpl extends ResourceImpl {
 			options = Collections.<String, Object> emptyMap();
 		}
 
+		if (!loadingURI && options.containsKey(EMFJs.OPTION_LAZY_CONTAINMENT)) {
+			// deferred elements are read again from the URI of the resource,
+			// documents given as streams are read whole
+			final Map<Object, Object> copy = new HashMap<Object, Object>(options);
+			copy.remove(EMFJs.OPTION_LAZY_CONTAINMENT);
+			options = copy;
+		}
+
 		if (inputStream instanceof URIConverter.Loadable) {
 			((URIConverter.Loadable) inputStream).loadResource(this);
 		} else {
-			mapper.from(inputStream, this, options);
+			inputStream = Compressions.decompress(inputStream, options);
+
+			final Object defer = options.get(EMFJs.OPTION_DEFER_ADAPTERS);
+
+			if (Boolean.TRUE.equals(defer) || EMFJs.ATTACH_AFTER_LOAD.equals(defer)) {
+				final List<Adapter> adapters = detachContentAdapters();
+				try {
+					mapper.from(inputStream, this, options);
+				} finally {
+					eAdapters().addAll(adapters);
+				}
+			} else if (EMFJs.ATTACH_ON_ACCESS.equals(defer)) {
+				pending = detachContentAdapters();
+				mapper.from(inputStream, this, options);
+			} else {
+				mapper.from(inputStream, this, options);
+			}
+		}
+	}
+
+	/**
+	 * Opens the document of the resource to read its deferred contents.
+	 *
+	 * @since 0.8.0
+	 */
+	public InputStream openDocument(Map<?, ?> options) throws IOException {
+		return Compressions.decompress(getURIConverter().createInputStream(getURI(), options), options);
+	}
+
+	/**
+	 * Returns the object of the fragment, loading the deferred elements on the path of
+	 * the fragment. If the object is not found, all deferred elements are loaded before
+	 * looking it up again.
+	 */
+	@Override
+	public EObject getEObject(String uriFragment) {
+		final DeferredContents deferred = isLoading() ? null : DeferredContents.get(this);
+
+		if (deferred != null) {
+			deferred.load(uriFragment);
+		}
+
+		EObject eObject = super.getEObject(uriFragment);
+
+		if (eObject == null && deferred != null && !deferred.isEmpty()) {
+			deferred.loadAll();
+			eObject = super.getEObject(uriFragment);
+		}
+
+		return eObject;
+	}
+
+	/**
+	 * Returns the contents of the resource. Content adapters deferred by the option 
+	 * {@link EMFJs#ATTACH_ON_ACCESS} are attached on the first call after the load.
+	 */
+	@Override
+	public EList<EObject> getContents() {
+		if (pending != null && !isLoading()) {
+			final List<Adapter> adapters = pending;
+			pending = null;
+			eAdapters().addAll(adapters);
+		}
+
+		return super.getContents();
+	}
+
+	/**
+	 * Removes the adapters that attach themselves to the contents of the resource, 
+	 * so that they are attached once to the loaded contents instead of following 
+	 * each object added during the load.
+	 */
+	private List<Adapter> detachContentAdapters() {
+		final List<Adapter> adapters = new ArrayList<Adapter>();
+
+		for (Adapter adapter: eAdapters()) {
+			if (adapter instanceof EContentAdapter || adapter instanceof ECrossReferenceAdapter) {
+				adapters.add(adapter);
+			}
+		}
+		eAdapters().removeAll(adapters);
+
+		return adapters;
+	}
+
+	/**
+	 * Loads the deferred elements before the document they are read from is replaced.
+	 */
+	@Override
+	public void save(Map<?, ?> options) throws IOException {
+		loadDeferred();
+
+		// only an index this resource has written or read is deleted,
+		// unless the option asks for no index
+		final boolean hadIndex = ObjectIndex.remove(this) || indexed;
+		final boolean noIndex = options != null && Boolean.FALSE.equals(options.get(EMFJs.OPTION_SAVE_INDEX));
+
+		savingURI = true;
+		indexed = false;
+		try {
+			super.save(options);
+		} finally {
+			savingURI = false;
+		}
+
+		if (!indexed && (hadIndex || noIndex)) {
+			deleteIndex(options);
+		}
+	}
+
+	private void deleteIndex(Map<?, ?> options) {
+		final URI indexURI = ObjectIndex.getIndexURI(getURI());
+		try {
+			if (getURIConverter().exists(indexURI, options)) {
+				getURIConverter().delete(indexURI, options);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	protected void doUnload() {
+		DeferredContents.remove(this);
+		super.doUnload();
+	}
+
+	private void loadDeferred() {
+		final DeferredContents deferred = DeferredContents.get(this);
+		if (deferred != null) {
+			deferred.loadAll();
 		}
 	}
 
@@ -56,10 +239,26 @@ public class JsResourceImpl extends ResourceImpl {
 			options = Collections.<String, Object> emptyMap();
 		}
 
+		loadDeferred();
+
 		if (outputStream instanceof URIConverter.Saveable) {
 			((URIConverter.Saveable) outputStream).saveResource(this);
-		} else {		
-			mapper.write(outputStream, this, options);
+		} else {
+			final Compression compression = Compressions.getCompression(getURI(), options);
+
+			if (compression == null && savingURI && Boolean.TRUE.equals(options.get(EMFJs.OPTION_SAVE_INDEX))) {
+				final ObjectIndex index = mapper.writeWithIndex(outputStream, this, options);
+				if (index != null) {
+					index.write(getURIConverter().createOutputStream(ObjectIndex.getIndexURI(getURI()), options));
+					indexed = true;
+				}
+			} else if (compression == null) {
+				mapper.write(outputStream, this, options);
+			} else {
+				final OutputStream compressed = Compressions.compress(compression, outputStream);
+				mapper.write(compressed, this, options);
+				compressed.close();
+			}
 		}
 	}
 
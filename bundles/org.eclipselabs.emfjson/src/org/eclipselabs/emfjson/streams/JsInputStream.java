@@ -47,8 +47,7 @@ public class JsInputStream extends InputStream implements URIConverter.Loadable
 			e.printStackTrace();
 		}
 		
-		final EObjectMapper mapper = new EObjectMapper();
-		mapper.from(url, resource, options);
+		EObjectMapper.getShared().from(url, resource, options);
 	}
 
 	@Override
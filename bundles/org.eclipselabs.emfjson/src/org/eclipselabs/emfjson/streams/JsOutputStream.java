@@ -39,7 +39,7 @@ public class JsOutputStream extends ByteArrayOutputStream implements URIConverte
 	@Override
 	public void saveResource(Resource resource) throws IOException {
 		this.resource = resource;
-		this.currentRoot = new EObjectMapper().to(resource, options);
+		this.currentRoot = EObjectMapper.getShared().to(resource, options);
 	}
 
 }
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.junit.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipselabs.emfjson.EMFJs;
+import org.eclipselabs.emfjson.junit.model.ModelPackage;
+import org.eclipselabs.emfjson.map.EObjectMapper;
+import org.eclipselabs.emfjson.resource.JsResourceFactoryImpl;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * Compares the size and the save and load times of text JSON and Smile
+ * documents for the test models. Run from the test project directory,
+ * the number of iterations is the first argument.
+ */
+public class SmileBenchmark {
+
+	private final EObjectMapper json = new EObjectMapper();
+	private final EObjectMapper smile;
+	private final Map<String, Object> options = new HashMap<String, Object>();
+
+	public SmileBenchmark() {
+		SmileFactory factory = new SmileFactory();
+		factory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+
+		smile = new EObjectMapper(factory);
+		options.put(EMFJs.OPTION_INDENT_OUTPUT, false);
+	}
+
+	public static void main(String[] args) throws IOException {
+		EPackage.Registry.INSTANCE.put(ModelPackage.eNS_URI, ModelPackage.eINSTANCE);
+
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		final File[] files = new File("tests").listFiles();
+		Arrays.sort(files);
+
+		System.out.println("file\tjson bytes\tsmile bytes\tjson save ms\tsmile save ms\tjson load ms\tsmile load ms");
+
+		final SmileBenchmark benchmark = new SmileBenchmark();
+		for (File file: files) {
+			if (file.getName().endsWith(".json")) {
+				benchmark.run(file, iterations);
+			}
+		}
+	}
+
+	private void run(File file, int iterations) throws IOException {
+		final Resource resource = createResourceSet(json, "json").createResource(URI.createFileURI(file.getAbsolutePath()));
+		resource.load(options);
+
+		if (resource.getContents().isEmpty()) {
+			return;
+		}
+
+		final byte[] jsonBytes = save(json, resource);
+		final byte[] smileBytes = save(smile, resource);
+
+		System.out.println(file.getName() +
+				"\t" + jsonBytes.length +
+				"\t" + smileBytes.length +
+				"\t" + timeSave(json, resource, iterations) +
+				"\t" + timeSave(smile, resource, iterations) +
+				"\t" + timeLoad(json, "json", jsonBytes, iterations) +
+				"\t" + timeLoad(smile, "sml", smileBytes, iterations));
+	}
+
+	private byte[] save(EObjectMapper mapper, Resource resource) {
+		final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		mapper.write(outStream, resource, options);
+
+		return outStream.toByteArray();
+	}
+
+	private long timeSave(EObjectMapper mapper, Resource resource, int iterations) {
+		final long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			save(mapper, resource);
+		}
+
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	private long timeLoad(EObjectMapper mapper, String extension, byte[] bytes, int iterations) throws IOException {
+		final long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			final Resource resource = createResourceSet(mapper, extension).createResource(URI.createURI("bench." + extension));
+			resource.load(new ByteArrayInputStream(bytes), options);
+		}
+
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	private ResourceSet createResourceSet(EObjectMapper mapper, String extension) {
+		final ResourceSet resourceSet = new ResourceSetImpl();
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put(extension, new JsResourceFactoryImpl(mapper));
+
+		return resourceSet;
+	}
+
+}
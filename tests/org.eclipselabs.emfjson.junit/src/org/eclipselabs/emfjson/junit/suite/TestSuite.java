@@ -12,7 +12,16 @@ package org.eclipselabs.emfjson.junit.suite;
 
 import org.eclipselabs.emfjson.junit.tests.TestEmfJsAnnotations;
 import org.eclipselabs.emfjson.junit.tests.TestEmfJsAttributes;
+import org.eclipselabs.emfjson.junit.tests.TestEmfJsCompression;
+import org.eclipselabs.emfjson.junit.tests.TestEmfJsFind;
+import org.eclipselabs.emfjson.junit.tests.TestEmfJsLazyContainment;
+import org.eclipselabs.emfjson.junit.tests.TestEmfJsLineDelimited;
+import org.eclipselabs.emfjson.junit.tests.TestEmfJsObjectIndex;
+import org.eclipselabs.emfjson.junit.tests.TestEmfJsProjection;
+import org.eclipselabs.emfjson.junit.tests.TestEmfJsReadValues;
 import org.eclipselabs.emfjson.junit.tests.TestEmfJsReferences;
+import org.eclipselabs.emfjson.junit.tests.TestEmfJsSmile;
+import org.eclipselabs.emfjson.junit.tests.TestEmfJsWriter;
 import org.eclipselabs.emfjson.junit.tests.TestPolymorphicType;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -23,6 +32,15 @@ import org.junit.runners.Suite.SuiteClasses;
 	TestEmfJsReferences.class, 
 	TestEmfJsAttributes.class, 
 	TestPolymorphicType.class, 
-	TestEmfJsAnnotations.class
+	TestEmfJsAnnotations.class,
+	TestEmfJsSmile.class,
+	TestEmfJsCompression.class,
+	TestEmfJsLineDelimited.class,
+	TestEmfJsReadValues.class,
+	TestEmfJsWriter.class,
+	TestEmfJsProjection.class,
+	TestEmfJsFind.class,
+	TestEmfJsLazyContainment.class,
+	TestEmfJsObjectIndex.class
 })
 public class TestSuite {}
@@ -9,11 +9,15 @@ import java.io.IOException;
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EAnnotation;
+import org.eclipse.emf.ecore.EAttribute;
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
 import org.eclipse.emf.ecore.EcoreFactory;
 import org.eclipse.emf.ecore.EcorePackage;
 import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipselabs.emfjson.EMFJs;
 import org.eclipselabs.emfjson.junit.support.TestSupport;
 import org.junit.Test;
 
@@ -70,4 +74,70 @@ public class TestEmfJsAnnotations extends TestSupport {
 		assertEquals("value", annotation.getDetails().get(0).getValue());
 	}
 
+	@Test
+	public void testSaveAfterElementAnnotationChanged() throws IOException {
+		EClass eClass = createFooClass();
+		EAttribute eAttribute = (EAttribute) eClass.getEStructuralFeature("name");
+
+		EObject foo = EcoreUtil.create(eClass);
+		foo.eSet(eAttribute, "Foo");
+
+		Resource resource = resourceSet.createResource(URI.createURI("test.json"));
+		resource.getContents().add(foo);
+
+		options.put(EMFJs.OPTION_SERIALIZE_TYPE, false);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		resource.save(outStream, options);
+
+		assertEquals("{\"name\":\"Foo\"}", outStream.toString());
+
+		EAnnotation eAnnotation = EcoreFactory.eINSTANCE.createEAnnotation();
+		eAnnotation.setSource("JSON");
+		eAnnotation.getDetails().put("element", "label");
+		eAttribute.getEAnnotations().add(eAnnotation);
+
+		outStream = new ByteArrayOutputStream();
+		resource.save(outStream, options);
+
+		assertEquals("{\"label\":\"Foo\"}", outStream.toString());
+	}
+
+	@Test
+	public void testLoadElementAnnotation() throws IOException {
+		EClass eClass = createFooClass();
+		EAttribute eAttribute = (EAttribute) eClass.getEStructuralFeature("name");
+
+		EAnnotation eAnnotation = EcoreFactory.eINSTANCE.createEAnnotation();
+		eAnnotation.setSource("JSON");
+		eAnnotation.getDetails().put("element", "label");
+		eAttribute.getEAnnotations().add(eAnnotation);
+
+		options.put(EMFJs.OPTION_ROOT_ELEMENT, eClass);
+
+		Resource resource = resourceSet.createResource(URI.createURI("test.json"));
+		resource.load(new ByteArrayInputStream("{\"label\":\"Foo\"}".getBytes()), options);
+
+		assertEquals(1, resource.getContents().size());
+		assertEquals("Foo", resource.getContents().get(0).eGet(eAttribute));
+	}
+
+	private EClass createFooClass() {
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName("p");
+		ePackage.setNsPrefix("p");
+		ePackage.setNsURI("http://eclipselabs.org/emfjson/junit/p");
+
+		EClass eClass = EcoreFactory.eINSTANCE.createEClass();
+		eClass.setName("Foo");
+		ePackage.getEClassifiers().add(eClass);
+
+		EAttribute eAttribute = EcoreFactory.eINSTANCE.createEAttribute();
+		eAttribute.setName("name");
+		eAttribute.setEType(EcorePackage.Literals.ESTRING);
+		eClass.getEStructuralFeatures().add(eAttribute);
+
+		return eClass;
+	}
+
 }
@@ -18,17 +18,25 @@ import static org.junit.Assert.assertTrue;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EDataType;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EcorePackage;
 import org.eclipse.emf.ecore.InternalEObject;
 import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.URIConverter;
+import org.eclipse.emf.ecore.resource.impl.ExtensibleURIConverterImpl;
 import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.eclipse.emf.ecore.util.InternalEList;
 import org.eclipselabs.emfjson.EMFJs;
@@ -42,8 +50,13 @@ import org.eclipselabs.emfjson.junit.model.Sex;
 import org.eclipselabs.emfjson.junit.model.SomeKind;
 import org.eclipselabs.emfjson.junit.model.User;
 import org.eclipselabs.emfjson.junit.support.TestSupport;
+import org.eclipselabs.emfjson.map.ValueCodec;
+import org.eclipselabs.emfjson.map.ValueCodecs;
 import org.junit.Test;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
 /**
  * 
  * @author guillaume
@@ -235,6 +248,67 @@ public class TestEmfJsAttributes extends TestSupport {
 		assertEquals(new BigDecimal(1.5), value);
 	}
 
+	@Test
+	public void testBigNumbersAsNumbers() throws IOException {
+		String expectedString = "{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//ETypes\",\"eBigDecimal\":1.50,\"eBigInteger\":123456789012345678901234567890}";
+
+		Resource resource = resourceSet.createResource(URI.createURI("tests/test.json"));
+
+		ETypes valueObject = ModelFactory.eINSTANCE.createETypes();
+		valueObject.setEBigInteger(new BigInteger("123456789012345678901234567890"));
+		valueObject.setEBigDecimal(new BigDecimal("1.50"));
+		resource.getContents().add(valueObject);
+
+		options.put(EMFJs.OPTION_VALUE_CODECS, new ValueCodecs()
+			.register(EcorePackage.Literals.EBIG_INTEGER, ValueCodecs.BIG_INTEGER_AS_NUMBER)
+			.register(EcorePackage.Literals.EBIG_DECIMAL, ValueCodecs.BIG_DECIMAL_AS_NUMBER));
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		resource.save(outStream, options);
+
+		assertEquals(expectedString, new String(outStream.toByteArray()));
+
+		Resource loaded = resourceSet.createResource(URI.createURI("tests/test-2.json"));
+		loaded.load(new ByteArrayInputStream(outStream.toByteArray()), null);
+
+		ETypes root = (ETypes) loaded.getContents().get(0);
+		assertEquals(new BigInteger("123456789012345678901234567890"), root.getEBigInteger());
+		assertEquals(new BigDecimal("1.50"), root.getEBigDecimal());
+	}
+
+	@Test
+	public void testCustomValueCodec() throws IOException {
+		String expectedString = "{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//ETypes\",\"eDate\":1000}";
+
+		ValueCodec millis = new ValueCodec() {
+			@Override
+			public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+				generator.writeNumber(((Date) value).getTime());
+			}
+			@Override
+			public Object read(EDataType dataType, JsonParser parser) throws IOException {
+				return new Date(parser.getLongValue());
+			}
+		};
+		options.put(EMFJs.OPTION_VALUE_CODECS, new ValueCodecs().register(EcorePackage.Literals.EDATE, millis));
+
+		Resource resource = resourceSet.createResource(URI.createURI("tests/test.json"));
+
+		ETypes valueObject = ModelFactory.eINSTANCE.createETypes();
+		valueObject.setEDate(new Date(1000));
+		resource.getContents().add(valueObject);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		resource.save(outStream, options);
+
+		assertEquals(expectedString, new String(outStream.toByteArray()));
+
+		Resource loaded = resourceSet.createResource(URI.createURI("tests/test-2.json"));
+		loaded.load(new ByteArrayInputStream(outStream.toByteArray()), options);
+
+		assertEquals(new Date(1000), ((ETypes) loaded.getContents().get(0)).getEDate());
+	}
+
 	@Test
 	public void testEnums() throws IOException {
 		String expectedString = "["
@@ -282,6 +356,20 @@ public class TestEmfJsAttributes extends TestSupport {
 		assertEquals(Sex.FEMALE, u2.getSex());
 	}
 
+	@Test
+	public void testLoadEnumsLeavesEEnumUnchanged() throws IOException {
+		String inputString = "{\"name\":\"A\",\"sex\":\"MALE\"}";
+		int adapters = ModelPackage.Literals.SEX.eAdapters().size();
+
+		Resource resource = resourceSet.createResource(URI.createURI("tests/test.json"));
+
+		options.put(EMFJs.OPTION_ROOT_ELEMENT, ModelPackage.Literals.USER);
+		resource.load(new ByteArrayInputStream(inputString.getBytes()), options);
+
+		assertEquals(Sex.MALE, ((User) resource.getContents().get(0)).getSex());
+		assertEquals(adapters, ModelPackage.Literals.SEX.eAdapters().size());
+	}
+
 	@Test
 	public void testSaveEnumDifferentCases() throws IOException {
 		String expectedString = "["
@@ -477,6 +565,33 @@ public class TestEmfJsAttributes extends TestSupport {
 		assertEquals("3112", ((Node) proxies2.basicGet(1)).getLabel());
 	}
 
+	@Test
+	public void testOptionProxyAttributesReadsDocumentOnce() throws IOException {
+		final URI proxyDocument = uri("test-proxy-4.json");
+		final List<URI> reads = new ArrayList<URI>();
+
+		URIConverter converter = new ExtensibleURIConverterImpl() {
+			@Override
+			public InputStream createInputStream(URI uri, Map<?, ?> options) throws IOException {
+				reads.add(uri);
+				return super.createInputStream(uri, options);
+			}
+		};
+		converter.getURIMap().putAll(resourceSet.getURIConverter().getURIMap());
+		resourceSet.setURIConverter(converter);
+
+		options.put(EMFJs.OPTION_PROXY_ATTRIBUTES, true);
+		Resource resource = resourceSet.createResource(uri("test-proxy-3.json"));
+		resource.load(options);
+
+		Node node = (Node) resource.getContents().get(1);
+		InternalEList<?> proxies = (InternalEList<?>) node.eGet(ModelPackage.Literals.NODE__MANY_REF, false);
+
+		assertEquals("311", ((Node) proxies.basicGet(0)).getLabel());
+		assertEquals("3112", ((Node) proxies.basicGet(1)).getLabel());
+		assertEquals(1, Collections.frequency(reads, proxyDocument));
+	}
+
 	@Test
 	public void testLoadRootObjectMap() throws IOException {
 		options.put(EMFJs.OPTION_ROOT_ELEMENT, ModelPackage.Literals.OBJECT_WITH_MAP);
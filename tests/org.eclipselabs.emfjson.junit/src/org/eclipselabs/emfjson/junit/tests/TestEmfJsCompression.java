@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.junit.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipselabs.emfjson.EMFJs;
+import org.eclipselabs.emfjson.junit.support.TestSupport;
+import org.eclipselabs.emfjson.resource.Compressions;
+import org.eclipselabs.emfjson.resource.JsResourceFactoryImpl;
+import org.junit.Test;
+
+public class TestEmfJsCompression extends TestSupport {
+
+	private String save(Resource resource) throws IOException {
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		resource.save(outStream, options);
+
+		return new String(outStream.toByteArray());
+	}
+
+	@Test
+	public void testSaveLoadWithCompressionOption() throws IOException {
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+		resource.load(options);
+
+		Map<String, Object> gzipOptions = new HashMap<String, Object>(options);
+		gzipOptions.put(EMFJs.OPTION_COMPRESSION, Compressions.GZIP);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		resource.save(outStream, gzipOptions);
+		byte[] bytes = outStream.toByteArray();
+
+		assertEquals((byte) 0x1f, bytes[0]);
+		assertEquals((byte) 0x8b, bytes[1]);
+
+		Resource loaded = resourceSet.createResource(uri("loaded.json"));
+		loaded.load(new ByteArrayInputStream(bytes), gzipOptions);
+
+		assertFalse(loaded.getContents().isEmpty());
+		assertEquals(save(resource), save(loaded));
+	}
+
+	@Test
+	public void testSaveWithCompressionLeavesStreamOpen() throws IOException {
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+		resource.load(options);
+
+		Map<String, Object> gzipOptions = new HashMap<String, Object>(options);
+		gzipOptions.put(EMFJs.OPTION_COMPRESSION, Compressions.GZIP);
+
+		final boolean[] closed = { false };
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream() {
+			@Override
+			public void close() throws IOException {
+				closed[0] = true;
+			}
+		};
+		resource.save(outStream, gzipOptions);
+
+		assertFalse(closed[0]);
+
+		Resource loaded = resourceSet.createResource(uri("loaded.json"));
+		loaded.load(new ByteArrayInputStream(outStream.toByteArray()), gzipOptions);
+
+		assertEquals(save(resource), save(loaded));
+	}
+
+	@Test
+	public void testLoadDetectsCompression() throws IOException {
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+		resource.load(options);
+		String expected = save(resource);
+
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put("gz", new JsResourceFactoryImpl());
+
+		Resource compressed = resourceSet.createResource(uri("nodes.json.gz"));
+		compressed.getContents().addAll(resource.getContents());
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		compressed.save(outStream, options);
+		byte[] bytes = outStream.toByteArray();
+
+		assertEquals((byte) 0x1f, bytes[0]);
+		assertEquals((byte) 0x8b, bytes[1]);
+
+		Resource loaded = resourceSet.createResource(uri("loaded.json"));
+		loaded.load(new ByteArrayInputStream(bytes), options);
+
+		assertFalse(loaded.getContents().isEmpty());
+		assertEquals(expected, save(loaded));
+	}
+
+	@Test
+	public void testLoadUncompressedWithCompressionOption() throws IOException {
+		Map<String, Object> gzipOptions = new HashMap<String, Object>(options);
+		gzipOptions.put(EMFJs.OPTION_COMPRESSION, Compressions.GZIP);
+
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+		resource.load(gzipOptions);
+
+		assertFalse(resource.getContents().isEmpty());
+	}
+
+}
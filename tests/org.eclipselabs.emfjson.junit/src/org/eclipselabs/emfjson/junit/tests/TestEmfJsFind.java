@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.junit.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipselabs.emfjson.junit.model.ModelPackage;
+import org.eclipselabs.emfjson.junit.model.Node;
+import org.eclipselabs.emfjson.junit.model.Sex;
+import org.eclipselabs.emfjson.junit.model.User;
+import org.eclipselabs.emfjson.junit.support.TestSupport;
+import org.eclipselabs.emfjson.map.EObjectMapper;
+import org.eclipselabs.emfjson.map.Query;
+import org.eclipselabs.emfjson.map.Query.Operator;
+import org.junit.Test;
+
+public class TestEmfJsFind extends TestSupport {
+
+	private Resource createResource(String document) throws IOException {
+		File file = File.createTempFile("test-find", ".json");
+		file.deleteOnExit();
+
+		FileOutputStream outStream = new FileOutputStream(file);
+		outStream.write(document.getBytes("UTF-8"));
+		outStream.close();
+
+		return resourceSet.createResource(URI.createFileURI(file.getAbsolutePath()));
+	}
+
+	@Test
+	public void testFindURIs() throws IOException {
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+
+		List<URI> uris = new EObjectMapper().find(new Query()
+			.ofType(ModelPackage.Literals.NODE)
+			.where(ModelPackage.Literals.NODE__LABEL, "n12"), resource, options);
+
+		assertFalse(resource.isLoaded());
+		assertEquals(1, uris.size());
+		assertEquals(uri("nodes.json#//@child.0/@child.0"), uris.get(0));
+
+		resource.load(options);
+		Node node = (Node) resource.getEObject(uris.get(0).fragment());
+
+		assertEquals("n12", node.getLabel());
+		assertEquals(EcoreUtil.getURI(node), uris.get(0));
+	}
+
+	@Test
+	public void testFindObjects() throws IOException {
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+
+		EList<EObject> objects = new EObjectMapper().findObjects(new Query()
+			.where(ModelPackage.Literals.NODE__LABEL, Operator.GREATER_OR_EQUAL, "n2")
+			.where(ModelPackage.Literals.NODE__LABEL, Operator.LESS, "o"), resource, options);
+
+		assertTrue(resource.getContents().isEmpty());
+		assertEquals(1, objects.size());
+
+		Node node = (Node) objects.get(0);
+		assertEquals("n2", node.getLabel());
+		assertEquals("n21", node.getChild().get(0).getLabel());
+		assertNull(node.eContainer());
+	}
+
+	@Test
+	public void testFindWithConditions() throws IOException {
+		Resource resource = createResource("[" +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\",\"userId\":\"1\",\"name\":\"John\"," +
+				"\"address\":{\"city\":\"Paris\"}}," +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\",\"userId\":\"2\",\"name\":\"Paula\",\"sex\":\"FEMALE\"}," +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\",\"userId\":\"3\",\"name\":\"Ringo\",\"sex\":\"MALE\"}]");
+
+		EObjectMapper mapper = new EObjectMapper();
+
+		List<URI> uris = mapper.find(new Query()
+			.where(ModelPackage.Literals.USER__SEX, Sex.MALE), resource, options);
+
+		assertEquals(2, uris.size());
+		assertEquals("/", uris.get(0).fragment());
+		assertEquals("/2", uris.get(1).fragment());
+
+		uris = mapper.find(new Query()
+			.ofType(ModelPackage.Literals.USER)
+			.has(ModelPackage.Literals.USER__ADDRESS), resource, options);
+
+		assertEquals(1, uris.size());
+		assertEquals("/", uris.get(0).fragment());
+
+		EList<EObject> objects = mapper.findObjects(new Query()
+			.where(ModelPackage.Literals.USER__SEX, Operator.NOT_EQUAL, Sex.MALE), resource, options);
+
+		assertEquals(1, objects.size());
+		assertEquals("Paula", ((User) objects.get(0)).getName());
+	}
+
+}
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.junit.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipselabs.emfjson.EMFJs;
+import org.eclipselabs.emfjson.junit.model.ModelPackage;
+import org.eclipselabs.emfjson.junit.model.Node;
+import org.eclipselabs.emfjson.junit.support.TestSupport;
+import org.eclipselabs.emfjson.map.DeferredContents;
+import org.junit.Test;
+
+public class TestEmfJsLazyContainment extends TestSupport {
+
+	private static final String NODES = "{" +
+			"\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Node\",\"label\":\"root\"," +
+			"\"target\":{\"$ref\":\"//@child.3\"}," +
+			"\"child\":[" +
+			"{\"label\":\"n1\",\"child\":[{\"label\":\"n11\"},{\"label\":\"n12\"},{\"label\":\"n13\"}]}," +
+			"{\"label\":\"n2\",\"source\":{\"$ref\":\"//@child.0/@child.2\"}}," +
+			"{\"label\":\"n3\",\"target\":{\"$ref\":\"//@child.0\"}}," +
+			"{\"label\":\"n4\"}]}";
+
+	private URI createDocument(String document) throws IOException {
+		File file = File.createTempFile("test-lazy", ".json");
+		file.deleteOnExit();
+
+		FileOutputStream outStream = new FileOutputStream(file);
+		outStream.write(document.getBytes("UTF-8"));
+		outStream.close();
+
+		return URI.createFileURI(file.getAbsolutePath());
+	}
+
+	private Resource load(URI uri, int threshold) throws IOException {
+		options.put(EMFJs.OPTION_LAZY_CONTAINMENT, threshold);
+
+		Resource resource = resourceSet.createResource(uri);
+		resource.load(options);
+		return resource;
+	}
+
+	@Test
+	public void testLoadDeferredElements() throws IOException {
+		Resource resource = load(createDocument(NODES), 2);
+		Node root = (Node) resource.getContents().get(0);
+
+		assertEquals(2, root.getChild().size());
+		assertEquals(2, root.getChild().get(0).getChild().size());
+
+		DeferredContents deferred = DeferredContents.get(resource);
+		assertTrue(deferred.isDeferred(root, ModelPackage.Literals.NODE__CHILD));
+
+		deferred.load(root, ModelPackage.Literals.NODE__CHILD);
+
+		assertFalse(deferred.isDeferred(root, ModelPackage.Literals.NODE__CHILD));
+		assertEquals(4, root.getChild().size());
+		assertEquals("n3", root.getChild().get(2).getLabel());
+		assertEquals("n4", root.getChild().get(3).getLabel());
+		assertSame(root.getChild().get(0), root.getChild().get(2).getTarget());
+		assertFalse(resource.isModified());
+	}
+
+	@Test
+	public void testResolveDeferredObjects() throws IOException {
+		Resource resource = load(createDocument(NODES), 1);
+		Node root = (Node) resource.getContents().get(0);
+
+		assertEquals(1, root.getChild().size());
+		assertTrue(root.getTarget().eIsProxy());
+
+		Node target = (Node) EcoreUtil.resolve(root.getTarget(), root);
+
+		assertFalse(target.eIsProxy());
+		assertEquals("n4", target.getLabel());
+		assertSame(root, target.eContainer());
+
+		Node n13 = (Node) resource.getEObject("//@child.0/@child.2");
+
+		assertEquals("n13", n13.getLabel());
+		assertSame(n13, EcoreUtil.resolve(root.getChild().get(1).getSource(), root));
+		assertTrue(DeferredContents.get(resource).isEmpty());
+	}
+
+	@Test
+	public void testSaveLoadsDeferredElements() throws IOException {
+		URI uri = createDocument(NODES);
+		Resource resource = load(uri, 0);
+		Node root = (Node) resource.getContents().get(0);
+
+		assertTrue(root.getChild().isEmpty());
+
+		root.setLabel("changed");
+		resource.save(options);
+		resource.unload();
+
+		assertNull(DeferredContents.get(resource));
+
+		options.remove(EMFJs.OPTION_LAZY_CONTAINMENT);
+		resource.load(options);
+		root = (Node) resource.getContents().get(0);
+
+		assertEquals("changed", root.getLabel());
+		assertEquals(4, root.getChild().size());
+		assertEquals(3, root.getChild().get(0).getChild().size());
+		assertSame(root.getChild().get(3), root.getTarget());
+	}
+
+	@Test
+	public void testDocumentChangedAfterLoad() throws IOException {
+		URI uri = createDocument(NODES);
+		Resource resource = load(uri, 2);
+		Node root = (Node) resource.getContents().get(0);
+
+		FileOutputStream outStream = new FileOutputStream(uri.toFileString());
+		outStream.write(NODES.replace("n3", "changed n3").getBytes("UTF-8"));
+		outStream.close();
+
+		DeferredContents deferred = DeferredContents.get(resource);
+		try {
+			deferred.load(root, ModelPackage.Literals.NODE__CHILD);
+			fail();
+		} catch (IllegalStateException e) {
+			assertTrue(deferred.isDeferred(root, ModelPackage.Literals.NODE__CHILD));
+			assertEquals(2, root.getChild().size());
+		}
+	}
+
+	@Test
+	public void testLoadStreamWhole() throws IOException {
+		options.put(EMFJs.OPTION_LAZY_CONTAINMENT, 1);
+
+		Resource resource = resourceSet.createResource(uri("test-lazy.json"));
+		resource.load(new ByteArrayInputStream(NODES.getBytes("UTF-8")), options);
+		Node root = (Node) resource.getContents().get(0);
+
+		assertEquals(4, root.getChild().size());
+		assertNull(DeferredContents.get(resource));
+	}
+
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.junit.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipselabs.emfjson.EMFJs;
+import org.eclipselabs.emfjson.junit.model.ModelFactory;
+import org.eclipselabs.emfjson.junit.model.User;
+import org.eclipselabs.emfjson.junit.support.TestSupport;
+import org.junit.Test;
+
+public class TestEmfJsLineDelimited extends TestSupport {
+
+	@Test
+	public void testSaveOneRootPerLine() throws IOException {
+		String expectedString =
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\"," +
+				"\"userId\":\"1\",\"name\":\"John\",\"sex\":\"MALE\"," +
+				"\"uniqueFriend\":{\"$ref\":\"2\",\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\"}}\n" +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\"," +
+				"\"userId\":\"2\",\"name\":\"Paul\",\"sex\":\"MALE\"}\n";
+
+		User user1 = ModelFactory.eINSTANCE.createUser();
+		user1.setUserId("1");
+		user1.setName("John");
+
+		User user2 = ModelFactory.eINSTANCE.createUser();
+		user2.setUserId("2");
+		user2.setName("Paul");
+		user1.setUniqueFriend(user2);
+
+		Resource resource = resourceSet.createResource(uri("test-lines.json"));
+		resource.getContents().add(user1);
+		resource.getContents().add(user2);
+
+		options.put(EMFJs.OPTION_LINE_DELIMITED, true);
+		options.put(EMFJs.OPTION_INDENT_OUTPUT, true);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		resource.save(outStream, options);
+
+		assertEquals(expectedString, new String(outStream.toByteArray()));
+	}
+
+	@Test
+	public void testLoadOneRootPerLine() throws IOException {
+		String lines =
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\"," +
+				"\"userId\":\"1\",\"name\":\"John\",\"uniqueFriend\":{\"$ref\":\"2\"}}\n" +
+				"\n" +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\"," +
+				"\"userId\":\"2\",\"name\":\"Paul\"}\n";
+
+		options.put(EMFJs.OPTION_LINE_DELIMITED, true);
+
+		Resource resource = resourceSet.createResource(uri("test-lines.json"));
+		resource.load(new ByteArrayInputStream(lines.getBytes("UTF-8")), options);
+
+		assertEquals(2, resource.getContents().size());
+
+		User user1 = (User) resource.getContents().get(0);
+		User user2 = (User) resource.getContents().get(1);
+
+		assertEquals("John", user1.getName());
+		assertEquals("Paul", user2.getName());
+		assertSame(user2, user1.getUniqueFriend());
+	}
+
+	@Test
+	public void testSaveLoadNamespacesOnFirstLine() throws IOException {
+		String expectedString =
+				"{\"@ns\":{\"model\":\"http://www.eclipselabs.org/emfjson/junit\"}}\n" +
+				"{\"eClass\":\"model://User\",\"userId\":\"1\",\"sex\":\"MALE\"}\n" +
+				"{\"eClass\":\"model://User\",\"userId\":\"2\",\"sex\":\"MALE\"}\n";
+
+		User u1 = ModelFactory.eINSTANCE.createUser();
+		u1.setUserId("1");
+
+		User u2 = ModelFactory.eINSTANCE.createUser();
+		u2.setUserId("2");
+
+		Resource resource = resourceSet.createResource(uri("test-lines.json"));
+		resource.getContents().add(u1);
+		resource.getContents().add(u2);
+
+		options.put(EMFJs.OPTION_LINE_DELIMITED, true);
+		options.put(EMFJs.OPTION_SERIALIZE_NAMESPACES, true);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		resource.save(outStream, options);
+
+		assertEquals(expectedString, new String(outStream.toByteArray()));
+
+		Resource loaded = resourceSet.createResource(uri("test-lines-loaded.json"));
+		loaded.load(new ByteArrayInputStream(outStream.toByteArray()), options);
+
+		assertEquals(2, loaded.getContents().size());
+		assertEquals("1", ((User) loaded.getContents().get(0)).getUserId());
+		assertEquals("2", ((User) loaded.getContents().get(1)).getUserId());
+	}
+
+	@Test
+	public void testLoadSkipsCorruptLine() throws IOException {
+		String lines =
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\",\"userId\":\"1\",\"name\":\"John\"}\n" +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\",\"userId\":\"3\",\"uniqueFriend\":{\"$ref\":\"1\"},\"name\":\n" +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\",\"userId\":\"2\",\"name\":\"Paul\"}\n";
+
+		options.put(EMFJs.OPTION_LINE_DELIMITED, true);
+
+		Resource resource = resourceSet.createResource(uri("test-lines.json"));
+		resource.load(new ByteArrayInputStream(lines.getBytes("UTF-8")), options);
+
+		assertEquals(2, resource.getContents().size());
+		assertEquals("John", ((User) resource.getContents().get(0)).getName());
+		assertEquals("Paul", ((User) resource.getContents().get(1)).getName());
+	}
+
+}
@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.junit.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.URIConverter;
+import org.eclipse.emf.ecore.resource.impl.ExtensibleURIConverterImpl;
+import org.eclipse.emf.ecore.util.InternalEList;
+import org.eclipselabs.emfjson.EMFJs;
+import org.eclipselabs.emfjson.junit.model.ModelFactory;
+import org.eclipselabs.emfjson.junit.model.ModelPackage;
+import org.eclipselabs.emfjson.junit.model.Node;
+import org.eclipselabs.emfjson.junit.model.User;
+import org.eclipselabs.emfjson.junit.support.TestSupport;
+import org.eclipselabs.emfjson.map.EObjectMapper;
+import org.eclipselabs.emfjson.map.ObjectIndex;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TestEmfJsObjectIndex extends TestSupport {
+
+	private URI createURI() throws IOException {
+		File file = File.createTempFile("test-index", ".json");
+		file.deleteOnExit();
+		new File(file.getAbsolutePath() + ".idx").deleteOnExit();
+
+		return URI.createFileURI(file.getAbsolutePath());
+	}
+
+	private Node createNode(String label) {
+		Node node = ModelFactory.eINSTANCE.createNode();
+		node.setLabel(label);
+		return node;
+	}
+
+	private Resource saveNodes(URI uri) throws IOException {
+		Node root = createNode("root");
+		for (int i = 1; i <= 3; i++) {
+			Node child = createNode("n" + i);
+			child.getChild().add(createNode("n" + i + "1"));
+			root.getChild().add(child);
+		}
+		root.getChild().get(1).setTarget(root.getChild().get(2));
+
+		Resource resource = resourceSet.createResource(uri);
+		resource.getContents().add(root);
+
+		options.put(EMFJs.OPTION_SAVE_INDEX, true);
+		resource.save(options);
+
+		return resource;
+	}
+
+	private byte[] readFile(URI uri) throws IOException {
+		File file = new File(uri.toFileString());
+		byte[] bytes = new byte[(int) file.length()];
+
+		FileInputStream inStream = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < bytes.length) {
+				read += inStream.read(bytes, read, bytes.length - read);
+			}
+		} finally {
+			inStream.close();
+		}
+
+		return bytes;
+	}
+
+	private JsonNode readSpan(byte[] document, ObjectIndex index, String fragment) throws IOException {
+		int offset = (int) index.getOffset(fragment);
+		int length = (int) index.getLength(fragment);
+
+		return new ObjectMapper().readTree(new String(document, offset, length, "UTF-8"));
+	}
+
+	@Test
+	public void testSaveIndex() throws IOException {
+		options.put(EMFJs.OPTION_INDENT_OUTPUT, true);
+
+		URI uri = createURI();
+		saveNodes(uri);
+
+		File indexFile = new File(ObjectIndex.getIndexURI(uri).toFileString());
+		assertTrue(indexFile.exists());
+
+		ObjectIndex index = ObjectIndex.read(new FileInputStream(indexFile));
+		byte[] document = readFile(uri);
+
+		assertEquals(7, index.size());
+		assertEquals(document.length, index.getDocumentLength());
+		assertEquals(0, index.getOffset("/"));
+		assertEquals("root", readSpan(document, index, "/").get("label").asText());
+		assertEquals("n2", readSpan(document, index, "//@child.1").get("label").asText());
+		assertEquals("n31", readSpan(document, index, "//@child.2/@child.0").get("label").asText());
+		assertEquals(-1, index.getOffset("//@child.3"));
+	}
+
+	@Test
+	public void testReadObject() throws IOException {
+		Resource resource = saveNodes(createURI());
+		resource.unload();
+
+		Node node = (Node) new EObjectMapper().readObject(resource, "//@child.1", options);
+
+		assertFalse(resource.isLoaded());
+		assertNotNull(node);
+		assertNull(node.eContainer());
+		assertEquals("n2", node.getLabel());
+		assertEquals("n21", node.getChild().get(0).getLabel());
+		assertTrue(node.getTarget().eIsProxy());
+		assertEquals(resource.getURI().appendFragment("//@child.2"), ((InternalEObject) node.getTarget()).eProxyURI());
+	}
+
+	@Test
+	public void testReadObjectWithID() throws IOException {
+		URI uri = createURI();
+		Resource resource = resourceSet.createResource(uri);
+
+		String[] names = { "John", "Paula", "Ringo" };
+		for (int i = 0; i < names.length; i++) {
+			User user = ModelFactory.eINSTANCE.createUser();
+			user.setUserId(String.valueOf(i + 1));
+			user.setName(names[i]);
+			resource.getContents().add(user);
+		}
+
+		options.put(EMFJs.OPTION_SAVE_INDEX, true);
+		resource.save(options);
+		resource.unload();
+
+		EObjectMapper mapper = new EObjectMapper();
+
+		assertEquals("Paula", ((User) mapper.readObject(resource, "2", options)).getName());
+		assertEquals("Ringo", ((User) mapper.readObject(resource, "/2", options)).getName());
+		assertNull(mapper.readObject(resource, "4", options));
+	}
+
+	@Test
+	public void testSaveWithoutIndex() throws IOException {
+		URI uri = createURI();
+		Resource resource = saveNodes(uri);
+
+		assertTrue(new File(ObjectIndex.getIndexURI(uri).toFileString()).exists());
+
+		options.remove(EMFJs.OPTION_SAVE_INDEX);
+		resource.save(options);
+		resource.unload();
+
+		assertFalse(new File(ObjectIndex.getIndexURI(uri).toFileString()).exists());
+		assertNull(new EObjectMapper().readObject(resource, "//@child.1", options));
+	}
+
+	@Test
+	public void testSaveKeepsIndexOfOtherResource() throws IOException {
+		URI uri = createURI();
+		Resource resource = saveNodes(uri);
+		resource.unload();
+		resourceSet.getResources().remove(resource);
+
+		Resource other = resourceSet.createResource(uri);
+		other.load(options);
+
+		options.remove(EMFJs.OPTION_SAVE_INDEX);
+		other.save(options);
+
+		assertTrue(new File(ObjectIndex.getIndexURI(uri).toFileString()).exists());
+
+		options.put(EMFJs.OPTION_SAVE_INDEX, false);
+		other.save(options);
+
+		assertFalse(new File(ObjectIndex.getIndexURI(uri).toFileString()).exists());
+	}
+
+	@Test
+	public void testOutOfDateIndex() throws IOException {
+		URI uri = createURI();
+		Resource resource = saveNodes(uri);
+		resource.unload();
+
+		byte[] document = readFile(uri);
+		FileOutputStream outStream = new FileOutputStream(uri.toFileString());
+		outStream.write(document, 1, document.length - 1);
+		outStream.close();
+
+		assertNull(new EObjectMapper().readObject(resource, "//@child.1", options));
+	}
+
+	@Test
+	public void testProxyAttributesFromIndex() throws IOException {
+		URI target = createURI();
+		Resource targetResource = saveNodes(target);
+		targetResource.unload();
+		resourceSet.getResources().remove(targetResource);
+
+		final List<URI> reads = new ArrayList<URI>();
+
+		URIConverter converter = new ExtensibleURIConverterImpl() {
+			@Override
+			public InputStream createInputStream(URI uri, Map<?, ?> options) throws IOException {
+				reads.add(uri);
+				return super.createInputStream(uri, options);
+			}
+		};
+		converter.getURIMap().putAll(resourceSet.getURIConverter().getURIMap());
+		resourceSet.setURIConverter(converter);
+
+		URI source = createURI();
+		FileOutputStream outStream = new FileOutputStream(source.toFileString());
+		outStream.write(("{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Node\",\"label\":\"source\"," +
+				"\"manyRef\":[{\"$ref\":\"" + target + "#//@child.0\"},{\"$ref\":\"" + target + "#//@child.2/@child.0\"}]}").getBytes("UTF-8"));
+		outStream.close();
+
+		options.put(EMFJs.OPTION_PROXY_ATTRIBUTES, true);
+		Resource resource = resourceSet.createResource(source);
+		resource.load(options);
+
+		Node node = (Node) resource.getContents().get(0);
+		InternalEList<?> proxies = (InternalEList<?>) node.eGet(ModelPackage.Literals.NODE__MANY_REF, false);
+
+		assertEquals(2, proxies.size());
+		assertTrue(((InternalEObject) proxies.basicGet(0)).eIsProxy());
+		assertEquals("n1", ((Node) proxies.basicGet(0)).getLabel());
+		assertEquals("n31", ((Node) proxies.basicGet(1)).getLabel());
+		assertFalse(reads.contains(target));
+	}
+
+}
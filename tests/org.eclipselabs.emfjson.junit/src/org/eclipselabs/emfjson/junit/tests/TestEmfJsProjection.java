@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.junit.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipselabs.emfjson.EMFJs;
+import org.eclipselabs.emfjson.junit.model.ModelPackage;
+import org.eclipselabs.emfjson.junit.model.Node;
+import org.eclipselabs.emfjson.junit.model.User;
+import org.eclipselabs.emfjson.junit.support.TestSupport;
+import org.eclipselabs.emfjson.map.EObjectMapper;
+import org.eclipselabs.emfjson.map.Projection;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TestEmfJsProjection extends TestSupport {
+
+	private static final String NODES = "{" +
+			"\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Node\",\"label\":\"root\"," +
+			"\"target\":{\"$ref\":\"//@child.0\"}," +
+			"\"source\":{\"$ref\":\"//@child.0/@child.0\"}," +
+			"\"child\":[{\"label\":\"n1\",\"child\":[{\"label\":\"n11\"}]},{\"label\":\"n2\"}]}";
+
+	private static final String USER = "{" +
+			"\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\",\"userId\":\"1\",\"name\":\"John\"," +
+			"\"address\":{\"addId\":\"a1\",\"city\":\"Paris\"}}";
+
+	private Resource load(String document) throws IOException {
+		Resource resource = resourceSet.createResource(uri("test-projection.json"));
+		resource.load(new ByteArrayInputStream(document.getBytes("UTF-8")), options);
+		return resource;
+	}
+
+	@Test
+	public void testLoadWithDepth() throws IOException {
+		options.put(EMFJs.OPTION_PROJECTION, new Projection().depth(2));
+
+		Resource resource = load(NODES);
+		Node root = (Node) resource.getContents().get(0);
+
+		assertEquals(2, root.getChild().size());
+		assertEquals("n1", root.getChild().get(0).getLabel());
+		assertTrue(root.getChild().get(0).getChild().isEmpty());
+		assertSame(root.getChild().get(0), root.getTarget());
+
+		assertTrue(root.getSource().eIsProxy());
+		assertEquals(uri("test-projection.json#//@child.0/@child.0"), ((InternalEObject) root.getSource()).eProxyURI());
+	}
+
+	@Test
+	public void testLoadSelectedFeatures() throws IOException {
+		options.put(EMFJs.OPTION_PROJECTION, new Projection()
+			.include(ModelPackage.Literals.NODE__LABEL)
+			.include(ModelPackage.Literals.NODE__CHILD));
+
+		Resource resource = load(NODES);
+		Node root = (Node) resource.getContents().get(0);
+
+		assertEquals("root", root.getLabel());
+		assertNull(root.getTarget());
+		assertNull(root.getSource());
+		assertEquals("n11", root.getChild().get(0).getChild().get(0).getLabel());
+	}
+
+	@Test
+	public void testLoadSelectedClasses() throws IOException {
+		options.put(EMFJs.OPTION_PROJECTION, new Projection().include(ModelPackage.Literals.USER));
+
+		Resource resource = load(USER);
+		User user = (User) resource.getContents().get(0);
+
+		assertEquals("John", user.getName());
+		assertNull(user.getAddress());
+	}
+
+	@Test
+	public void testLoadTreeWithProjection() throws IOException {
+		options.put(EMFJs.OPTION_PROJECTION, new Projection()
+			.include(ModelPackage.Literals.NODE__LABEL)
+			.include(ModelPackage.Literals.NODE__CHILD)
+			.depth(2));
+
+		Resource resource = resourceSet.createResource(uri("test-projection.json"));
+		new EObjectMapper().from(new ObjectMapper().readTree(NODES), resource, options);
+		Node root = (Node) resource.getContents().get(0);
+
+		assertEquals("root", root.getLabel());
+		assertNull(root.getTarget());
+		assertEquals(2, root.getChild().size());
+		assertTrue(root.getChild().get(0).getChild().isEmpty());
+	}
+
+}
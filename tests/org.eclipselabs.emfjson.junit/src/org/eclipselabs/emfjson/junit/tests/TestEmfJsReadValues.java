@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.junit.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipselabs.emfjson.EMFJs;
+import org.eclipselabs.emfjson.junit.model.ModelFactory;
+import org.eclipselabs.emfjson.junit.model.ModelPackage;
+import org.eclipselabs.emfjson.junit.model.User;
+import org.eclipselabs.emfjson.junit.support.TestSupport;
+import org.eclipselabs.emfjson.map.EObjectIterator;
+import org.eclipselabs.emfjson.map.EObjectMapper;
+import org.junit.Test;
+
+public class TestEmfJsReadValues extends TestSupport {
+
+	private List<EObject> readAll(EObjectIterator it) {
+		List<EObject> values = new ArrayList<EObject>();
+		while (it.hasNext()) {
+			values.add(it.next());
+		}
+		return values;
+	}
+
+	@Test
+	public void testReadValuesOfArray() throws IOException {
+		String document = "[" +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\",\"userId\":\"1\",\"name\":\"John\"}," +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\",\"userId\":\"2\",\"name\":\"Paul\"}]";
+
+		Resource resource = resourceSet.createResource(uri("test-values.json"));
+
+		EObjectIterator it = new EObjectMapper().readValues(new ByteArrayInputStream(document.getBytes("UTF-8")), null, resource, options);
+		List<EObject> values = readAll(it);
+
+		assertEquals(2, values.size());
+		assertEquals("John", ((User) values.get(0)).getName());
+		assertEquals("Paul", ((User) values.get(1)).getName());
+		assertNull(values.get(0).eResource());
+		assertTrue(resource.getContents().isEmpty());
+	}
+
+	@Test
+	public void testReadValuesResolvesAgainstResource() throws IOException {
+		String document = "[" +
+				"{\"userId\":\"1\",\"name\":\"John\",\"uniqueFriend\":{\"$ref\":\"2\"}}," +
+				"{\"userId\":\"3\",\"name\":\"Ringo\",\"uniqueFriend\":{\"$ref\":\"4\"}}]";
+
+		Resource resource = resourceSet.createResource(uri("test-values.json"));
+		User paul = ModelFactory.eINSTANCE.createUser();
+		paul.setUserId("2");
+		resource.getContents().add(paul);
+
+		EObjectIterator it = new EObjectMapper().readValues(new ByteArrayInputStream(document.getBytes("UTF-8")),
+				ModelPackage.Literals.USER, resource, options);
+		List<EObject> values = readAll(it);
+
+		assertEquals(2, values.size());
+		assertSame(paul, ((User) values.get(0)).getUniqueFriend());
+
+		User proxy = ((User) values.get(1)).getUniqueFriend();
+		assertTrue(proxy.eIsProxy());
+		assertEquals(uri("test-values.json#4"), ((InternalEObject) proxy).eProxyURI());
+		assertEquals(1, resource.getContents().size());
+	}
+
+	@Test
+	public void testReadValuesOfLines() throws IOException {
+		String lines =
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\",\"userId\":\"1\",\"name\":\"John\"}\n" +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\",\"userId\":\"3\",\"name\":\n" +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\",\"userId\":\"2\",\"name\":\"Paul\"}\n";
+
+		options.put(EMFJs.OPTION_LINE_DELIMITED, true);
+
+		Resource resource = resourceSet.createResource(uri("test-values.json"));
+
+		EObjectIterator it = new EObjectMapper().readValues(new ByteArrayInputStream(lines.getBytes("UTF-8")), null, resource, options);
+
+		assertTrue(it.hasNext());
+		assertEquals("John", ((User) it.next()).getName());
+		assertTrue(it.hasNext());
+		assertEquals("Paul", ((User) it.next()).getName());
+		assertFalse(it.hasNext());
+
+		it.close();
+	}
+
+}
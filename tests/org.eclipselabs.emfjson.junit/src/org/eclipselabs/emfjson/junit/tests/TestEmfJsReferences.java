@@ -13,25 +13,39 @@ package org.eclipselabs.emfjson.junit.tests;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
+import org.eclipse.emf.common.notify.Notification;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EAttribute;
 import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EDataType;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EPackage;
 import org.eclipse.emf.ecore.EReference;
 import org.eclipse.emf.ecore.EcorePackage;
 import org.eclipse.emf.ecore.InternalEObject;
 import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EContentAdapter;
 import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.util.InternalEList;
 import org.eclipselabs.emfjson.EMFJs;
+import org.eclipselabs.emfjson.junit.model.AbstractType;
 import org.eclipselabs.emfjson.junit.model.Address;
+import org.eclipselabs.emfjson.junit.model.ConcreteTypeTwo;
 import org.eclipselabs.emfjson.junit.model.ModelFactory;
 import org.eclipselabs.emfjson.junit.model.ModelPackage;
 import org.eclipselabs.emfjson.junit.model.Node;
@@ -40,8 +54,14 @@ import org.eclipselabs.emfjson.junit.model.PrimaryObject;
 import org.eclipselabs.emfjson.junit.model.TargetObject;
 import org.eclipselabs.emfjson.junit.model.User;
 import org.eclipselabs.emfjson.junit.support.TestSupport;
+import org.eclipselabs.emfjson.map.EObjectMapper;
+import org.eclipselabs.emfjson.map.ValueCodec;
+import org.eclipselabs.emfjson.map.ValueCodecs;
 import org.junit.Test;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
 public class TestEmfJsReferences extends TestSupport {
 
 	@Test
@@ -442,6 +462,268 @@ public class TestEmfJsReferences extends TestSupport {
 		assertNull(root.getSource());
 	}
 
+	@Test
+	public void testLoadReferencesToSecondRoot() throws IOException {
+		String data = "[" +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Node\",\"label\":\"r0\"," +
+				"\"target\":{\"$ref\":\"/1/@child.1\"}," +
+				"\"manyRef\":[{\"$ref\":\"/1\"},{\"$ref\":\"/1/@uniqueChild\"},{\"$ref\":\"/0\"}]}," +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Node\",\"label\":\"r1\"," +
+				"\"child\":[{\"label\":\"a\"},{\"label\":\"b\",\"source\":{\"$ref\":\"/0\"}}]," +
+				"\"uniqueChild\":{\"label\":\"c\"}}]";
+
+		Resource resource = resourceSet.createResource(URI.createURI("tests/test.json"));
+		resource.load(new ByteArrayInputStream(data.getBytes()), options);
+
+		assertEquals(2, resource.getContents().size());
+
+		Node r0 = (Node) resource.getContents().get(0);
+		Node r1 = (Node) resource.getContents().get(1);
+
+		assertSame(r1.getChild().get(1), r0.getTarget());
+		assertEquals(3, r0.getManyRef().size());
+		assertSame(r1, r0.getManyRef().get(0));
+		assertSame(r1.getUniqueChild(), r0.getManyRef().get(1));
+		assertSame(r0, r0.getManyRef().get(2));
+	}
+
+	@Test
+	public void testSaveReferencesToSecondRoot() throws IOException {
+		Node r0 = ModelFactory.eINSTANCE.createNode();
+		r0.setLabel("r0");
+		Node r1 = ModelFactory.eINSTANCE.createNode();
+		r1.setLabel("r1");
+		Node a = ModelFactory.eINSTANCE.createNode();
+		a.setLabel("a");
+		Node b = ModelFactory.eINSTANCE.createNode();
+		b.setLabel("b");
+		Node c = ModelFactory.eINSTANCE.createNode();
+		c.setLabel("c");
+
+		r1.getChild().add(a);
+		r1.getChild().add(b);
+		r1.setUniqueChild(c);
+		r0.setTarget(b);
+		r0.getManyRef().add(r1);
+		r0.getManyRef().add(c);
+		r0.getManyRef().add(r0);
+		c.getManyRef().add(a);
+
+		Resource resource = resourceSet.createResource(URI.createURI("tests/test.json"));
+		resource.getContents().add(r0);
+		resource.getContents().add(r1);
+
+		Map<String, Object> saveOptions = new HashMap<String, Object>();
+		saveOptions.put(EMFJs.OPTION_SERIALIZE_TYPE, false);
+		saveOptions.put(EMFJs.OPTION_SERIALIZE_REF_TYPE, false);
+		saveOptions.put(EMFJs.OPTION_INDENT_OUTPUT, false);
+
+		String expected = "[" +
+				"{\"label\":\"r0\"," +
+				"\"target\":{\"$ref\":\"/1/@child.1\"}," +
+				"\"manyRef\":[{\"$ref\":\"/1\"},{\"$ref\":\"/1/@uniqueChild\"},{\"$ref\":\"/0\"}]}," +
+				"{\"label\":\"r1\"," +
+				"\"child\":[{\"label\":\"a\"},{\"label\":\"b\",\"source\":{\"$ref\":\"/0\"}}]," +
+				"\"uniqueChild\":{\"label\":\"c\",\"manyRef\":[{\"$ref\":\"/1/@child.0\"}]}}]";
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		resource.save(outStream, saveOptions);
+
+		assertEquals(expected, new String(outStream.toByteArray()));
+	}
+
+	@Test
+	public void testLoadReferencesShareProxies() throws IOException {
+		String data = "[" +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Node\",\"label\":\"n1\"," +
+				"\"manyRef\":[{\"$ref\":\"http://eclipselabs.org/emfjson/tests/other.json#//@child.0\"}]," +
+				"\"target\":{\"$ref\":\"http://eclipselabs.org/emfjson/tests/other.json#//@child.0\"}}," +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Node\",\"label\":\"n2\"," +
+				"\"manyRef\":[{\"$ref\":\"http://eclipselabs.org/emfjson/tests/other.json#//@child.0\"}]}]";
+
+		Resource resource = resourceSet.createResource(URI.createURI("tests/test.json"));
+		resource.load(new ByteArrayInputStream(data.getBytes()), options);
+
+		InternalEList<?> refs1 = (InternalEList<?>) ((Node) resource.getContents().get(0)).eGet(ModelPackage.Literals.NODE__MANY_REF, false);
+		InternalEList<?> refs2 = (InternalEList<?>) ((Node) resource.getContents().get(1)).eGet(ModelPackage.Literals.NODE__MANY_REF, false);
+
+		assertTrue(((EObject) refs1.basicGet(0)).eIsProxy());
+		assertSame(refs1.basicGet(0), refs2.basicGet(0));
+
+		// target has an opposite, its proxy is not shared
+		Node target = ((Node) resource.getContents().get(0)).getTarget();
+		assertTrue(target.eIsProxy());
+		assertNotSame(refs1.basicGet(0), target);
+
+		Resource other = resourceSet.createResource(URI.createURI("tests/test-2.json"));
+		other.load(new ByteArrayInputStream(data.getBytes()), options);
+
+		InternalEList<?> otherRefs = (InternalEList<?>) ((Node) other.getContents().get(0)).eGet(ModelPackage.Literals.NODE__MANY_REF, false);
+		assertNotSame(refs1.basicGet(0), otherRefs.basicGet(0));
+	}
+
+	@Test
+	public void testLoadReferencesShareProxiesInResourceSet() throws IOException {
+		String data = "{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Node\",\"label\":\"n1\"," +
+				"\"manyRef\":[{\"$ref\":\"http://eclipselabs.org/emfjson/tests/other.json#//@child.0\"}]}";
+
+		options.put(EMFJs.OPTION_SHARE_PROXIES, true);
+
+		Resource first = resourceSet.createResource(URI.createURI("tests/test.json"));
+		first.load(new ByteArrayInputStream(data.getBytes()), options);
+		Resource second = resourceSet.createResource(URI.createURI("tests/test-2.json"));
+		second.load(new ByteArrayInputStream(data.getBytes()), options);
+
+		InternalEList<?> refs1 = (InternalEList<?>) ((Node) first.getContents().get(0)).eGet(ModelPackage.Literals.NODE__MANY_REF, false);
+		InternalEList<?> refs2 = (InternalEList<?>) ((Node) second.getContents().get(0)).eGet(ModelPackage.Literals.NODE__MANY_REF, false);
+
+		assertSame(refs1.basicGet(0), refs2.basicGet(0));
+	}
+
+	@Test
+	public void testLoadReferencesShareOnlyCurrentProxies() throws IOException {
+		String data = "{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Node\",\"label\":\"n1\"," +
+				"\"manyRef\":[{\"$ref\":\"http://eclipselabs.org/emfjson/tests/other.json#//@child.0\"}]}";
+
+		options.put(EMFJs.OPTION_SHARE_PROXIES, true);
+
+		Resource first = resourceSet.createResource(URI.createURI("tests/test.json"));
+		first.load(new ByteArrayInputStream(data.getBytes()), options);
+
+		InternalEList<?> refs1 = (InternalEList<?>) ((Node) first.getContents().get(0)).eGet(ModelPackage.Literals.NODE__MANY_REF, false);
+		((InternalEObject) refs1.basicGet(0)).eSetProxyURI(URI.createURI("http://eclipselabs.org/emfjson/tests/other.json#//@child.1"));
+
+		Resource second = resourceSet.createResource(URI.createURI("tests/test-2.json"));
+		second.load(new ByteArrayInputStream(data.getBytes()), options);
+		Resource third = resourceSet.createResource(URI.createURI("tests/test-3.json"));
+		third.load(new ByteArrayInputStream(data.getBytes()), options);
+
+		InternalEList<?> refs2 = (InternalEList<?>) ((Node) second.getContents().get(0)).eGet(ModelPackage.Literals.NODE__MANY_REF, false);
+		InternalEList<?> refs3 = (InternalEList<?>) ((Node) third.getContents().get(0)).eGet(ModelPackage.Literals.NODE__MANY_REF, false);
+
+		assertNotSame(refs1.basicGet(0), refs2.basicGet(0));
+		assertSame(refs2.basicGet(0), refs3.basicGet(0));
+	}
+
+	@Test
+	public void testLoadSameReferenceTwiceInUniqueList() throws IOException {
+		String data = "{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//ConcreteTypeOne\",\"name\":\"one\"," +
+				"\"refProperty\":[" +
+				"{\"$ref\":\"http://eclipselabs.org/emfjson/tests/other.json#two\",\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//ConcreteTypeTwo\"}," +
+				"{\"$ref\":\"http://eclipselabs.org/emfjson/tests/other.json#two\",\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//ConcreteTypeTwo\"}]}";
+
+		Resource resource = resourceSet.createResource(URI.createURI("tests/test.json"));
+		resource.load(new ByteArrayInputStream(data.getBytes()), options);
+
+		AbstractType one = (AbstractType) resource.getContents().get(0);
+		InternalEList<?> refs = (InternalEList<?>) one.eGet(ModelPackage.Literals.ABSTRACT_TYPE__REF_PROPERTY, false);
+
+		assertEquals(2, refs.size());
+		assertTrue(refs.basicGet(0) instanceof ConcreteTypeTwo);
+		assertTrue(refs.basicGet(1) instanceof ConcreteTypeTwo);
+	}
+
+	@Test
+	public void testBulkLoadSameAsLoad() throws IOException {
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+		resource.load(options);
+
+		Map<String, Object> bulkOptions = new HashMap<String, Object>(options);
+		bulkOptions.put(EMFJs.OPTION_BULK_LOAD, true);
+
+		Resource bulk = resourceSet.createResource(uri("nodes.json").appendQuery("bulk"));
+		bulk.load(resourceSet.getURIConverter().createInputStream(uri("nodes.json")), bulkOptions);
+
+		for (Iterator<EObject> it = bulk.getAllContents(); it.hasNext();) {
+			assertTrue(it.next().eDeliver());
+		}
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		resource.save(expected, options);
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		bulk.save(actual, options);
+
+		assertEquals(new String(expected.toByteArray()), new String(actual.toByteArray()));
+	}
+
+	@Test
+	public void testLoadDeferAdaptersAfterLoad() throws IOException {
+		final List<Notification> notifications = new ArrayList<Notification>();
+		EContentAdapter adapter = new EContentAdapter() {
+			@Override
+			public void notifyChanged(Notification notification) {
+				super.notifyChanged(notification);
+				if (notification.getNotifier() instanceof EObject) {
+					notifications.add(notification);
+				}
+			}
+		};
+
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+		resource.eAdapters().add(adapter);
+
+		Map<String, Object> deferOptions = new HashMap<String, Object>(options);
+		deferOptions.put(EMFJs.OPTION_DEFER_ADAPTERS, EMFJs.ATTACH_AFTER_LOAD);
+		resource.load(deferOptions);
+
+		assertTrue(notifications.isEmpty());
+		assertTrue(resource.eAdapters().contains(adapter));
+		for (Iterator<EObject> it = resource.getAllContents(); it.hasNext();) {
+			EObject eObject = it.next();
+			assertTrue(eObject.eDeliver());
+			assertTrue(eObject.eAdapters().contains(adapter));
+		}
+	}
+
+	@Test
+	public void testLoadDeferAdaptersAfterFailedLoad() throws IOException {
+		EContentAdapter adapter = new EContentAdapter();
+
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+		resource.eAdapters().add(adapter);
+
+		ValueCodec failing = new ValueCodec() {
+			@Override
+			public void write(EDataType dataType, Object value, JsonGenerator generator) throws IOException {
+				generator.writeString(String.valueOf(value));
+			}
+			@Override
+			public Object read(EDataType dataType, JsonParser parser) throws IOException {
+				throw new IllegalArgumentException(parser.getText());
+			}
+		};
+
+		Map<String, Object> deferOptions = new HashMap<String, Object>(options);
+		deferOptions.put(EMFJs.OPTION_DEFER_ADAPTERS, EMFJs.ATTACH_AFTER_LOAD);
+		deferOptions.put(EMFJs.OPTION_VALUE_CODECS, new ValueCodecs().register(EcorePackage.Literals.ESTRING, failing));
+
+		try {
+			resource.load(deferOptions);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(resource.eAdapters().contains(adapter));
+		}
+	}
+
+	@Test
+	public void testLoadDeferAdaptersOnAccess() throws IOException {
+		EContentAdapter adapter = new EContentAdapter();
+
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+		resource.eAdapters().add(adapter);
+
+		Map<String, Object> deferOptions = new HashMap<String, Object>(options);
+		deferOptions.put(EMFJs.OPTION_DEFER_ADAPTERS, EMFJs.ATTACH_ON_ACCESS);
+		resource.load(deferOptions);
+
+		assertFalse(resource.eAdapters().contains(adapter));
+		assertFalse(resource.getContents().isEmpty());
+		assertTrue(resource.eAdapters().contains(adapter));
+		for (Iterator<EObject> it = resource.getAllContents(); it.hasNext();) {
+			assertTrue(it.next().eAdapters().contains(adapter));
+		}
+	}
+
 	@Test
 	public void testSaveContainmentResolveProxies() throws IOException {
 		String expectedProxyResource = "{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Node\",\"label\":\"1\"}";
@@ -489,6 +771,25 @@ public class TestEmfJsReferences extends TestSupport {
 		assertFalse(child.eIsProxy());
 	}
 
+	@Test
+	public void testLoadContainmentProxyWithTypeFirst() throws IOException {
+		String data = "{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Node\",\"label\":\"2\"," +
+				"\"child\":[{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Node\",\"$ref\":\"http://eclipselabs.org/emfjson/tests/other.json#//@child.0\"}," +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Node\",\"label\":\"3\"}]}";
+
+		Resource resource = resourceSet.createResource(URI.createURI("tests/test.json"));
+		resource.load(new ByteArrayInputStream(data.getBytes()), options);
+
+		Node root = (Node) resource.getContents().get(0);
+		InternalEList<?> children = (InternalEList<?>) root.eGet(ModelPackage.Literals.NODE__CHILD, false);
+
+		assertEquals(2, children.size());
+		assertTrue(((EObject) children.basicGet(0)).eIsProxy());
+		assertEquals(URI.createURI("http://eclipselabs.org/emfjson/tests/other.json#//@child.0"), ((InternalEObject) children.basicGet(0)).eProxyURI());
+		assertFalse(((EObject) children.basicGet(1)).eIsProxy());
+		assertEquals("3", ((Node) children.basicGet(1)).getLabel());
+	}
+
 	@Test
 	public void testLoadObjectWithMapContainment() throws IOException {
 		options.put(EMFJs.OPTION_ROOT_ELEMENT, ModelPackage.Literals.OBJECT_WITH_MAP);
@@ -602,4 +903,41 @@ public class TestEmfJsReferences extends TestSupport {
 		assertEquals(expectedString, new String(outStream.toByteArray()));
 	}
 
+	@Test
+	public void testSaveStreamSameAsTree() throws IOException {
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+		resource.load(options);
+
+		EObjectMapper mapper = new EObjectMapper();
+
+		ByteArrayOutputStream treeStream = new ByteArrayOutputStream();
+		mapper.write(treeStream, mapper.to(resource, options));
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		mapper.write(outStream, resource, options);
+
+		assertEquals(new String(treeStream.toByteArray()), new String(outStream.toByteArray()));
+	}
+
+	@Test
+	public void testSharedMapperUsesOptionsOfEachCall() throws IOException {
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+		resource.load(options);
+
+		EObjectMapper mapper = EObjectMapper.getShared();
+
+		Map<String, Object> noTypes = new HashMap<String, Object>(options);
+		noTypes.put(EMFJs.OPTION_SERIALIZE_TYPE, false);
+		noTypes.put(EMFJs.OPTION_SERIALIZE_REF_TYPE, false);
+
+		ByteArrayOutputStream noTypesStream = new ByteArrayOutputStream();
+		mapper.write(noTypesStream, resource, noTypes);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		mapper.write(outStream, resource, options);
+
+		assertFalse(new String(noTypesStream.toByteArray()).contains("eClass"));
+		assertTrue(new String(outStream.toByteArray()).contains("eClass"));
+	}
+
 }
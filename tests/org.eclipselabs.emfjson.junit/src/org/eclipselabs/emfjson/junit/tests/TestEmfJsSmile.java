@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.junit.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipselabs.emfjson.junit.support.TestSupport;
+import org.eclipselabs.emfjson.map.EObjectMapper;
+import org.eclipselabs.emfjson.resource.JsResourceFactoryImpl;
+import org.junit.Test;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+public class TestEmfJsSmile extends TestSupport {
+
+	private EObjectMapper smileMapper() {
+		SmileFactory factory = new SmileFactory();
+		factory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+
+		return new EObjectMapper(factory);
+	}
+
+	private String saveAsJson(Resource resource) {
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		new EObjectMapper().write(outStream, resource, options);
+
+		return new String(outStream.toByteArray());
+	}
+
+	@Test
+	public void testSaveLoadSmile() throws IOException {
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+		resource.load(options);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		smileMapper().write(outStream, resource, options);
+		byte[] bytes = outStream.toByteArray();
+
+		// smile header
+		assertEquals(':', bytes[0]);
+		assertEquals(')', bytes[1]);
+
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put("sml", new JsResourceFactoryImpl(smileMapper()));
+
+		Resource loaded = resourceSet.createResource(uri("nodes.sml"));
+		loaded.load(new ByteArrayInputStream(bytes), options);
+
+		assertFalse(loaded.getContents().isEmpty());
+		assertEquals(saveAsJson(resource), saveAsJson(loaded));
+	}
+
+	@Test
+	public void testSmileSmallerThanJson() throws IOException {
+		Resource resource = resourceSet.createResource(uri("nodes.json"));
+		resource.load(options);
+
+		ByteArrayOutputStream smile = new ByteArrayOutputStream();
+		smileMapper().write(smile, resource, options);
+
+		assertTrue(smile.size() < saveAsJson(resource).length());
+	}
+
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Guillaume Hillairet.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Guillaume Hillairet - initial API and implementation
+ *******************************************************************************/
+package org.eclipselabs.emfjson.junit.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipselabs.emfjson.EMFJs;
+import org.eclipselabs.emfjson.junit.model.ModelFactory;
+import org.eclipselabs.emfjson.junit.model.User;
+import org.eclipselabs.emfjson.junit.support.TestSupport;
+import org.eclipselabs.emfjson.map.EObjectMapper;
+import org.eclipselabs.emfjson.map.EObjectWriter;
+import org.junit.Test;
+
+public class TestEmfJsWriter extends TestSupport {
+
+	private User createUser(String id, String name) {
+		User user = ModelFactory.eINSTANCE.createUser();
+		user.setUserId(id);
+		user.setName(name);
+		return user;
+	}
+
+	@Test
+	public void testWriteRootsInArray() throws IOException {
+		String expectedString = "[" +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\"," +
+				"\"userId\":\"1\",\"name\":\"John\",\"sex\":\"MALE\"," +
+				"\"uniqueFriend\":{\"$ref\":\"2\",\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\"}}," +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\"," +
+				"\"userId\":\"2\",\"name\":\"Paul\",\"sex\":\"MALE\"}]";
+
+		User user1 = createUser("1", "John");
+		User user2 = createUser("2", "Paul");
+		user1.setUniqueFriend(user2);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		EObjectWriter writer = new EObjectMapper().writer(outStream, resourceSet.createResource(uri("test-writer.json")), options);
+		writer.write(user1);
+		writer.write(user2);
+		writer.close();
+
+		assertEquals(expectedString, new String(outStream.toByteArray()));
+
+		Resource loaded = resourceSet.createResource(uri("test-writer-loaded.json"));
+		loaded.load(new ByteArrayInputStream(outStream.toByteArray()), options);
+
+		assertEquals(2, loaded.getContents().size());
+		assertSame(loaded.getContents().get(1), ((User) loaded.getContents().get(0)).getUniqueFriend());
+	}
+
+	@Test
+	public void testWriteRootsOnLinesWithNamespaces() throws IOException {
+		String expectedString =
+				"{\"@ns\":{\"model\":\"http://www.eclipselabs.org/emfjson/junit\"}}\n" +
+				"{\"eClass\":\"model://User\",\"userId\":\"1\",\"sex\":\"MALE\"}\n" +
+				"{\"eClass\":\"model://User\",\"userId\":\"2\",\"sex\":\"MALE\"}\n";
+
+		options.put(EMFJs.OPTION_LINE_DELIMITED, true);
+		options.put(EMFJs.OPTION_SERIALIZE_NAMESPACES, true);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		EObjectWriter writer = new EObjectMapper().writer(outStream, resourceSet.createResource(uri("test-writer.json")), options);
+		writer.write(createUser("1", null));
+		writer.write(createUser("2", null));
+		writer.close();
+
+		assertEquals(expectedString, new String(outStream.toByteArray()));
+	}
+
+	@Test
+	public void testWriteFlushesOnThreshold() throws IOException {
+		options.put(EMFJs.OPTION_LINE_DELIMITED, true);
+		options.put(EMFJs.OPTION_FLUSH_THRESHOLD, 2);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		EObjectWriter writer = new EObjectMapper().writer(outStream, resourceSet.createResource(uri("test-writer.json")), options);
+
+		writer.write(createUser("1", "John"));
+		assertEquals(0, outStream.size());
+
+		writer.write(createUser("2", "Paul"));
+		int size = outStream.size();
+		assertEquals(2, new String(outStream.toByteArray()).split("\n").length);
+
+		writer.write(createUser("3", "Ringo"));
+		assertEquals(size, outStream.size());
+
+		writer.close();
+		assertEquals(3, new String(outStream.toByteArray()).split("\n").length);
+	}
+
+	@Test
+	public void testWriteReferencesToResource() throws IOException {
+		Resource resource = resourceSet.createResource(uri("test-users.json"));
+		User paul = createUser("2", "Paul");
+		resource.getContents().add(paul);
+
+		User john = createUser("1", "John");
+		john.setUniqueFriend(paul);
+
+		options.put(EMFJs.OPTION_SERIALIZE_REF_TYPE, false);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		EObjectWriter writer = new EObjectMapper().writer(outStream, resourceSet.createResource(uri("test-writer.json")), options);
+		writer.write(john);
+		writer.write(paul);
+		writer.close();
+
+		String expectedString = "[" +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\"," +
+				"\"userId\":\"1\",\"name\":\"John\",\"sex\":\"MALE\"," +
+				"\"uniqueFriend\":{\"$ref\":\"" + uri("test-users.json") + "#2\"}}," +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//User\"," +
+				"\"userId\":\"2\",\"name\":\"Paul\",\"sex\":\"MALE\"}]";
+
+		assertEquals(expectedString, new String(outStream.toByteArray()));
+	}
+
+}
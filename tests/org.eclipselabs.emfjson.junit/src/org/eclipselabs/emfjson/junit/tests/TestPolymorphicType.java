@@ -18,8 +18,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
 import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.eclipselabs.emfjson.EMFJs;
 import org.eclipselabs.emfjson.junit.model.AbstractType;
 import org.eclipselabs.emfjson.junit.model.ConcreteTypeOne;
@@ -28,8 +35,12 @@ import org.eclipselabs.emfjson.junit.model.Container;
 import org.eclipselabs.emfjson.junit.model.ModelFactory;
 import org.eclipselabs.emfjson.junit.model.ModelPackage;
 import org.eclipselabs.emfjson.junit.support.TestSupport;
+import org.eclipselabs.emfjson.map.EObjectMapper;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 public class TestPolymorphicType extends TestSupport {
 	
 	@Test
@@ -121,4 +132,122 @@ public class TestPolymorphicType extends TestSupport {
 		assertEquals(second, ref);
 	}
 
+	@Test
+	public void testLoadTwoObjectsWithTypeInformationNotFirst() throws IOException {
+		Resource resource = resourceSet.createResource(uri("test-load-types-3.json"));
+		assertNotNull(resource);
+		options.put(EMFJs.OPTION_ROOT_ELEMENT, ModelPackage.eINSTANCE.getContainer());
+		
+		resource.load(options);
+		
+		assertEquals(1, resource.getContents().size());
+		
+		Container container = (Container) resource.getContents().get(0);
+		
+		assertEquals(2, container.getElements().size());
+		AbstractType first = container.getElements().get(0);
+		AbstractType second = container.getElements().get(1);
+		
+		assertTrue(first instanceof ConcreteTypeOne);
+		assertTrue(second instanceof ConcreteTypeTwo);
+		
+		assertEquals("First", first.getName());
+		assertEquals("one", ((ConcreteTypeOne)first).getPropTypeOne());
+		assertEquals("two", ((ConcreteTypeTwo)second).getPropTypeTwo());
+		assertEquals(1, first.getRefProperty().size());
+		assertEquals(second, first.getRefProperty().get(0));
+	}
+
+	@Test
+	public void testLoadContainedReferencesTypeFromNodes() throws IOException {
+		String data = "{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//Container\"," +
+				"\"elements\":[" +
+				"{\"$ref\":\"//Two\"}," +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//ConcreteTypeOne\",\"name\":\"One\"}," +
+				"{\"$ref\":\"//One\"}," +
+				"{\"eClass\":\"http://www.eclipselabs.org/emfjson/junit#//ConcreteTypeTwo\",\"name\":\"Two\"}]}";
+
+		Resource resource = resourceSet.createResource(URI.createURI("tests/test.json"));
+		// marks the resource as loaded, references to it must not load the file
+		resource.getContents().add(ModelFactory.eINSTANCE.createContainer());
+		resource.getContents().clear();
+
+		EObjectMapper mapper = new EObjectMapper();
+		JsonNode node = new ObjectMapper().readTree(data);
+		Container container = (Container) mapper.from(node, resource, options);
+
+		assertEquals(4, container.getElements().size());
+		assertTrue(container.getElements().get(0) instanceof ConcreteTypeTwo);
+		assertTrue(container.getElements().get(1) instanceof ConcreteTypeOne);
+		assertTrue(container.getElements().get(2) instanceof ConcreteTypeOne);
+		assertTrue(container.getElements().get(3) instanceof ConcreteTypeTwo);
+		assertTrue(container.getElements().get(0).eIsProxy());
+		assertTrue(container.getElements().get(2).eIsProxy());
+	}
+
+	@Test
+	public void testSaveTypeAfterEClassRenamed() throws IOException {
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName("p");
+		ePackage.setNsPrefix("p");
+		ePackage.setNsURI("http://eclipselabs.org/emfjson/junit/p");
+
+		EClass eClass = EcoreFactory.eINSTANCE.createEClass();
+		eClass.setName("Foo");
+		ePackage.getEClassifiers().add(eClass);
+
+		Resource ecore = new ResourceImpl(URI.createURI("http://eclipselabs.org/emfjson/junit/p"));
+		ecore.getContents().add(ePackage);
+
+		Resource resource = resourceSet.createResource(URI.createURI("types.json"));
+		resource.getContents().add(EcoreUtil.create(eClass));
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		resource.save(outStream, options);
+
+		assertEquals("{\"eClass\":\"http://eclipselabs.org/emfjson/junit/p#//Foo\"}", new String(outStream.toByteArray()));
+
+		eClass.setName("Bar");
+
+		outStream = new ByteArrayOutputStream();
+		resource.save(outStream, options);
+
+		assertEquals("{\"eClass\":\"http://eclipselabs.org/emfjson/junit/p#//Bar\"}", new String(outStream.toByteArray()));
+	}
+
+	@Test
+	public void testSaveAfterFeatureAdded() throws IOException {
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName("p");
+		ePackage.setNsPrefix("p");
+		ePackage.setNsURI("http://eclipselabs.org/emfjson/junit/p");
+
+		EClass eClass = EcoreFactory.eINSTANCE.createEClass();
+		eClass.setName("Foo");
+		ePackage.getEClassifiers().add(eClass);
+
+		Resource ecore = new ResourceImpl(URI.createURI("http://eclipselabs.org/emfjson/junit/p"));
+		ecore.getContents().add(ePackage);
+
+		Resource resource = resourceSet.createResource(URI.createURI("types.json"));
+		EObject foo = EcoreUtil.create(eClass);
+		resource.getContents().add(foo);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		resource.save(outStream, options);
+
+		assertEquals("{\"eClass\":\"http://eclipselabs.org/emfjson/junit/p#//Foo\"}", new String(outStream.toByteArray()));
+
+		EAttribute name = EcoreFactory.eINSTANCE.createEAttribute();
+		name.setName("name");
+		name.setEType(EcorePackage.Literals.ESTRING);
+		eClass.getEStructuralFeatures().add(name);
+		foo.eSet(name, "foo");
+
+		outStream = new ByteArrayOutputStream();
+		resource.save(outStream, options);
+
+		assertEquals("{\"eClass\":\"http://eclipselabs.org/emfjson/junit/p#//Foo\",\"name\":\"foo\"}", new String(outStream.toByteArray()));
+	}
+
 }